@@ -62,6 +62,16 @@ COMMENT ON COLUMN auto_endpoint_all.active IS '是否激活';
 COMMENT ON COLUMN auto_endpoint_all.inactive_reason IS '未激活原因';
 COMMENT ON COLUMN auto_endpoint_all.is_coverage IS '是否纳入测试覆盖';
 
+-- ============================================
+-- Table: auto_api_configuration (alter)
+-- Description: 服务级别的限流与并发配置，为空表示不限制
+-- ============================================
+ALTER TABLE auto_api_configuration ADD COLUMN IF NOT EXISTS "rateLimitPerSecond" INTEGER;
+ALTER TABLE auto_api_configuration ADD COLUMN IF NOT EXISTS "maxInFlight" INTEGER;
+
+COMMENT ON COLUMN auto_api_configuration."rateLimitPerSecond" IS '每秒最大请求数（按serviceName）';
+COMMENT ON COLUMN auto_api_configuration."maxInFlight" IS '最大并发请求数（按serviceName）';
+
 -- ============================================
 -- Sample Data (Optional)
 -- ============================================
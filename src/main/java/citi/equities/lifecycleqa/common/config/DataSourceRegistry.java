@@ -0,0 +1,178 @@
+package citi.equities.lifecycleqa.common.config;
+
+import citi.equities.lifecycleqa.common.utils.DBCPDataSourceFactory;
+import citi.equities.lifecycleqa.common.utils.DBUtil;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Target databases (drms, ignite, cfim per region/env) are opened on first use from the
+ * ehapi.<db>.<profile>.* config and closed again once idle, so a run only holds pools for the
+ * databases it touches. The sum of maxTotal over these pools is capped by datasource.max.total.connections.
+ */
+public class DataSourceRegistry {
+    private static final Logger log = LoggerFactory.getLogger(DataSourceRegistry.class);
+
+    private static final Map<String, PoolEntry> POOLS = new ConcurrentHashMap<>();
+    private static volatile ScheduledExecutorService evictor;
+
+    public static SqlSessionManager fetchSqlSessionManager(String dbType, String region, String env, StringBuilder errorMessage) {
+        if ("lif".equalsIgnoreCase(dbType)) {
+            return InitialConfig.getLIFSqlSessionManager();
+        }
+
+        String connectionName = DBUtil.buildSqlSessionManagerName(dbType, region, env);
+        while (true) {
+            PoolEntry entry = POOLS.get(connectionName);
+            if (entry == null) {
+                entry = createPool(connectionName, DBUtil.buildDBName(dbType).toLowerCase(), (region + env).toLowerCase(), errorMessage);
+                if (entry == null) {
+                    return null;
+                }
+            }
+            // touched under the entry lock, so the evictor either sees the new lastUsed or has closed it before
+            synchronized (entry) {
+                if (!entry.closed) {
+                    entry.lastUsed = System.currentTimeMillis();
+                    return entry.sessionManager;
+                }
+            }
+            // evicted in between, open it again
+        }
+    }
+
+    public static int evictIdlePools(long idleMillis) {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        synchronized (DataSourceRegistry.class) {
+            for (Map.Entry<String, PoolEntry> item : POOLS.entrySet()) {
+                PoolEntry entry = item.getValue();
+                synchronized (entry) {
+                    if (now - entry.lastUsed >= idleMillis && fetchActiveConnections(entry) == 0) {
+                        entry.closed = true;
+                        POOLS.remove(item.getKey(), entry);
+                        DBCPDataSourceFactory.closePool(item.getKey());
+                        log.info("Close idle datasource {} with maxTotal {}", item.getKey(), entry.maxTotal);
+                        evicted++;
+                    }
+                }
+            }
+        }
+        return evicted;
+    }
+
+    private static synchronized PoolEntry createPool(String connectionName, String dbName, String profile, StringBuilder errorMessage) {
+        PoolEntry existing = POOLS.get(connectionName);
+        if (existing != null) {
+            return existing;
+        }
+
+        Map<String, String> dbPropertyMap = fetchDBPropertyMap();
+        Map<String, String> dbConnectMap = InitialConfig.buildDBConnectMap(dbPropertyMap, dbName, profile);
+        if (dbConnectMap.get("url").isEmpty()) {
+            errorMessage.append("No datasource config found for ehapi.").append(dbName).append(".").append(profile).append(".url");
+            log.error("No datasource config found for {}", connectionName);
+            return null;
+        }
+
+        Map<String, String> poolPropertyMap = InitialConfig.buildDBPoolMap(dbPropertyMap, dbName, profile);
+        int maxTotal = Integer.parseInt(poolPropertyMap.getOrDefault("pool.maxTotal", "20"));
+        int budget = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("datasource.max.total.connections", "100").toString());
+        int remaining = budget - fetchReservedConnections();
+        if (remaining < maxTotal) {
+            // make room by closing pools nobody is using right now before shrinking the new one,
+            // the short grace keeps a pool that was just handed out from being closed under its caller
+            evictIdlePools(5000L);
+            remaining = budget - fetchReservedConnections();
+        }
+        if (remaining <= 0) {
+            errorMessage.append("Connection budget datasource.max.total.connections=").append(budget)
+                    .append(" is used up, can not open datasource ").append(connectionName);
+            log.error("Connection budget {} is used up, can not open datasource {}", budget, connectionName);
+            return null;
+        }
+        maxTotal = Math.min(maxTotal, remaining);
+        poolPropertyMap.put("pool.maxTotal", String.valueOf(maxTotal));
+        poolPropertyMap.put("pool.maxIdle", String.valueOf(Math.min(maxTotal,
+                Integer.parseInt(poolPropertyMap.getOrDefault("pool.maxIdle", "10")))));
+
+        SqlSessionManager sessionManager = InitialConfig.getSqlSessionManager(connectionName, dbConnectMap, poolPropertyMap);
+        if (sessionManager == null) {
+            errorMessage.append("Failed to create SqlSessionManager for: ").append(connectionName);
+            return null;
+        }
+
+        PoolEntry entry = new PoolEntry(sessionManager, maxTotal);
+        POOLS.put(connectionName, entry);
+        startEvictorIfNeeded();
+        log.info("Open datasource {} with maxTotal {}, {} of {} connections left", connectionName, maxTotal,
+                remaining - maxTotal, budget);
+        return entry;
+    }
+
+    // ehapi.* values loaded from auto_system_variable
+    static Map<String, String> fetchDBPropertyMap() {
+        Map<String, String> result = new HashMap<>();
+        InitialConfig.INFO_CONFIG.forEach((key, value) -> {
+            if (key.startsWith("ehapi.") && value instanceof String) {
+                result.put(key, (String) value);
+            }
+        });
+        return result;
+    }
+
+    private static int fetchReservedConnections() {
+        return POOLS.values().stream().mapToInt(entry -> entry.maxTotal).sum();
+    }
+
+    private static int fetchActiveConnections(PoolEntry entry) {
+        try {
+            return entry.sessionManager.getConfiguration().getEnvironment().getDataSource()
+                    .unwrap(BasicDataSource.class).getNumActive();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static void startEvictorIfNeeded() {
+        if (evictor != null) {
+            return;
+        }
+        long idleSeconds = Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("datasource.idle.evict.seconds", "600").toString());
+        long checkSeconds = Math.max(1L, Math.min(60L, idleSeconds));
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "datasource-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                evictIdlePools(idleSeconds * 1000L);
+            } catch (Exception e) {
+                log.warn("Failed to evict idle datasources: {}", e.getMessage());
+            }
+        }, checkSeconds, checkSeconds, TimeUnit.SECONDS);
+        evictor = executor;
+    }
+
+    private static class PoolEntry {
+        private final SqlSessionManager sessionManager;
+        private final int maxTotal;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private boolean closed;
+
+        private PoolEntry(SqlSessionManager sessionManager, int maxTotal) {
+            this.sessionManager = sessionManager;
+            this.maxTotal = maxTotal;
+        }
+    }
+}
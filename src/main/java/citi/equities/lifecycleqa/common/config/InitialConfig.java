@@ -4,6 +4,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import citi.equities.lifecycleqa.common.enums.DBConnectKey;
 import citi.equities.lifecycleqa.common.enums.EHEureka;
+import citi.equities.lifecycleqa.common.helpers.HttpClientPoolHelper;
+import citi.equities.lifecycleqa.common.utils.DBCPDataSourceFactory;
 import citi.equities.lifecycleqa.common.utils.DBUtil;
 import citi.equities.lifecycleqa.common.utils.RSAUtil;
 import io.restassured.RestAssured;
@@ -20,6 +22,7 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class InitialConfig {
     private static final Logger log = LoggerFactory.getLogger(InitialConfig.class);
@@ -28,6 +31,11 @@ public class InitialConfig {
     public static Map<String, Object> INFO_CONFIG = new ConcurrentHashMap<>();
     public static Map<String, SqlSessionManager> DB_CONFIG = new ConcurrentHashMap<>();
     private static volatile boolean ifInitial = false;
+    // lower(serviceName|profile) -> base_url, replaced as a whole on reload
+    private static volatile Map<String, String> BASE_URL_INDEX = new ConcurrentHashMap<>();
+    private static volatile boolean baseUrlIndexStale = false;
+    // bumped by invalidateBaseUrlIndex, a load that overlaps an invalidation leaves the index stale
+    private static final AtomicLong BASE_URL_INDEX_INVALIDATIONS = new AtomicLong();
 
     public static synchronized void initEHConfigurationAndOthers() {
         if (!ifInitial) {
@@ -35,7 +43,12 @@ public class InitialConfig {
             fetchEHConfigurationMap();
             fetchComponentDependentsConfigMap();
             fetchOtherConfig();
+            applyDBPoolOverrides();
+            installLIFReplica();
             fetchComponentServiceNameRelated();
+            loadBaseUrlIndex(true);
+            scheduleBaseUrlIndexRefresh();
+            registerShutdownHook();
             ifInitial = true;
         } else {
             log.info("EHConfiguration and Others has been Initialized");
@@ -74,6 +87,79 @@ public class InitialConfig {
     }
 
     public static String fetchBaseUrl(String serviceName, String profile) {
+        if (baseUrlIndexStale) {
+            loadBaseUrlIndex(false);
+        }
+        String indexKey = buildBaseUrlIndexKey(serviceName, profile);
+        String baseUrl = BASE_URL_INDEX.get(indexKey);
+        if (baseUrl != null) {
+            return baseUrl;
+        }
+
+        baseUrl = fetchBaseUrlFromDB(serviceName, profile);
+        if (!baseUrl.isEmpty()) {
+            BASE_URL_INDEX.put(indexKey, baseUrl);
+        }
+        return baseUrl;
+    }
+
+    public static void invalidateBaseUrlIndex() {
+        log.info("Base url index is invalidated, will reload on next lookup");
+        BASE_URL_INDEX_INVALIDATIONS.incrementAndGet();
+        baseUrlIndexStale = true;
+    }
+
+    // lookups only load while stale, re-checked here because another lookup may have loaded it meanwhile
+    private static synchronized void loadBaseUrlIndex(boolean force) {
+        if (!force && !baseUrlIndexStale) {
+            return;
+        }
+        long invalidations = BASE_URL_INDEX_INVALIDATIONS.get();
+        String sql = "select distinct service_name, profile, base_url from auto_baseurl where profile is not null and service_name is not null";
+        StringBuilder errorMessage = new StringBuilder();
+        JsonNode result = DBUtil.executeLIF(sql, true, errorMessage);
+        if (errorMessage.length() > 0 || result == null || !result.isArray()) {
+            log.error("Failed to load base url index: {}", errorMessage);
+            return;
+        }
+
+        Map<String, String> index = new ConcurrentHashMap<>();
+        for (JsonNode node : result) {
+            String serviceName = node.has("service_name") ? node.get("service_name").asText("") : "";
+            String profile = node.has("profile") ? node.get("profile").asText("") : "";
+            String baseUrl = node.has("base_url") ? node.get("base_url").asText("") : "";
+            if (!baseUrl.isEmpty()) {
+                index.putIfAbsent(buildBaseUrlIndexKey(serviceName, profile), baseUrl);
+            }
+        }
+        BASE_URL_INDEX = index;
+        if (invalidations == BASE_URL_INDEX_INVALIDATIONS.get()) {
+            baseUrlIndexStale = false;
+        }
+        log.info("Loaded {} base urls into index", index.size());
+    }
+
+    private static void scheduleBaseUrlIndexRefresh() {
+        long refreshSeconds = Long.parseLong(INFO_CONFIG.getOrDefault("baseurl.refresh.seconds", "300").toString());
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "baseurl-index-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                loadBaseUrlIndex(true);
+            } catch (Exception e) {
+                log.error("Failed to refresh base url index: {}", e.getMessage());
+            }
+        }, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    private static String buildBaseUrlIndexKey(String serviceName, String profile) {
+        return (serviceName + "|" + profile).toLowerCase();
+    }
+
+    private static String fetchBaseUrlFromDB(String serviceName, String profile) {
         String sql = "select distinct base_url from auto_baseurl where profile is not null and lower(profile) = lower('" +
                 profile + "') and lower(service_name) = lower('" + serviceName + "') limit 1";
         StringBuilder errorMessage = new StringBuilder();
@@ -81,8 +167,19 @@ public class InitialConfig {
         return result != null && result.isTextual() ? result.asText() : "";
     }
 
+    public static int getServiceRateLimitPerSecond(String serviceName) {
+        Object value = INFO_CONFIG.get((serviceName + "-ratelimitpersecond").toLowerCase());
+        return value != null ? (Integer) value : 0;
+    }
+
+    public static int getServiceMaxInFlight(String serviceName) {
+        Object value = INFO_CONFIG.get((serviceName + "-maxinflight").toLowerCase());
+        return value != null ? (Integer) value : 0;
+    }
+
     private static void fetchComponentServiceNameRelated() {
-        String sql = "select distinct component, \"serviceName\" from auto_api_configuration where \"serviceName\" is not null and \"serviceName\" != ''";
+        String sql = "select distinct component, \"serviceName\", \"rateLimitPerSecond\", \"maxInFlight\" from auto_api_configuration " +
+                "where \"serviceName\" is not null and \"serviceName\" != ''";
         StringBuilder errorMessage = new StringBuilder();
         JsonNode result = DBUtil.executeLIF(sql, true, errorMessage);
         if (result != null && result.isArray()) {
@@ -90,6 +187,18 @@ public class InitialConfig {
                 String component = node.has("component") ? node.get("component").asText("").toLowerCase() : "";
                 String serviceName = node.has("serviceName") ? node.get("serviceName").asText("") : "";
                 INFO_CONFIG.put(component + "-servicename", serviceName);
+
+                // several components can share one service, keep the strictest limit
+                int rateLimit = node.has("rateLimitPerSecond") ? node.get("rateLimitPerSecond").asInt(0) : 0;
+                int maxInFlight = node.has("maxInFlight") ? node.get("maxInFlight").asInt(0) : 0;
+                if (rateLimit > 0) {
+                    INFO_CONFIG.merge((serviceName + "-ratelimitpersecond").toLowerCase(), rateLimit,
+                            (a, b) -> Math.min((Integer) a, (Integer) b));
+                }
+                if (maxInFlight > 0) {
+                    INFO_CONFIG.merge((serviceName + "-maxinflight").toLowerCase(), maxInFlight,
+                            (a, b) -> Math.min((Integer) a, (Integer) b));
+                }
             }
         }
     }
@@ -139,11 +248,12 @@ public class InitialConfig {
         for (DBConnectKey key : DBConnectKey.values()) {
             Map<String, String> dbConnectMap = buildDBConnectMap(dbPropertyMap, key.getDbName(), key.getProfile());
             INFO_CONFIG.put(key.getConnectName(), dbConnectMap);
-            DB_CONFIG.put(key.getConnectName(), getSqlSessionManager(dbConnectMap));
+            DB_CONFIG.put(key.getConnectName(), getSqlSessionManager(key.getConnectName(), dbConnectMap,
+                    buildDBPoolMap(dbPropertyMap, key.getDbName(), key.getProfile())));
         }
     }
 
-    private static Map<String, String> buildDBConnectMap(Map<String, String> dbPropertyMap, String dbName, String profile) {
+    static Map<String, String> buildDBConnectMap(Map<String, String> dbPropertyMap, String dbName, String profile) {
         Map<String, String> result = new HashMap<>();
         result.put("driver", dbPropertyMap.getOrDefault("ehapi." + dbName + "." + profile + ".driver", ""));
         result.put("url", dbPropertyMap.getOrDefault("ehapi." + dbName + "." + profile + ".url", ""));
@@ -152,9 +262,24 @@ public class InitialConfig {
         return result;
     }
 
-    private static SqlSessionManager getSqlSessionManager(Map<String, String> dbPropertyMap) {
+    // ehapi.<db>.<profile>.pool.* -> pool.*, unset keys fall back to the defaults in mybatis.xml
+    static Map<String, String> buildDBPoolMap(Map<String, String> dbPropertyMap, String dbName, String profile) {
+        String prefix = "ehapi." + dbName + "." + profile + ".pool.";
+        Map<String, String> result = new HashMap<>();
+        dbPropertyMap.forEach((key, value) -> {
+            if (key.startsWith(prefix)) {
+                result.put("pool." + key.substring(prefix.length()), value);
+            }
+        });
+        return result;
+    }
+
+    static SqlSessionManager getSqlSessionManager(String poolName, Map<String, String> dbPropertyMap,
+                                                  Map<String, String> poolPropertyMap) {
         try {
             Properties properties = new Properties();
+            properties.putAll(poolPropertyMap);
+            properties.setProperty("poolName", poolName);
             properties.setProperty("driver", dbPropertyMap.get("driver"));
             properties.setProperty("url", dbPropertyMap.get("url"));
             properties.setProperty("username", dbPropertyMap.get("username"));
@@ -170,6 +295,53 @@ public class InitialConfig {
         }
     }
 
+    // ehapi.<db>.<profile>.pool.* comes from auto_system_variable, which is read through the pool it configures,
+    // so pools with overrides are rebuilt once it is loaded. Nothing else uses them yet during init
+    private static void applyDBPoolOverrides() {
+        Map<String, String> dbPropertyMap = DataSourceRegistry.fetchDBPropertyMap();
+        for (DBConnectKey key : DBConnectKey.values()) {
+            Map<String, String> poolPropertyMap = buildDBPoolMap(dbPropertyMap, key.getDbName(), key.getProfile());
+            Object dbConnectMap = INFO_CONFIG.get(key.getConnectName());
+            if (poolPropertyMap.isEmpty() || !(dbConnectMap instanceof Map) || DB_CONFIG.get(key.getConnectName()) == null) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            SqlSessionManager rebuilt = getSqlSessionManager(key.getConnectName(), (Map<String, String>) dbConnectMap, poolPropertyMap);
+            if (rebuilt == null) {
+                log.error("Failed to apply pool overrides {} to {}, keep the default pool", poolPropertyMap.keySet(), key.getConnectName());
+                continue;
+            }
+            DB_CONFIG.put(key.getConnectName(), rebuilt);
+            log.info("Applied pool overrides {} to {}", poolPropertyMap.keySet(), key.getConnectName());
+        }
+    }
+
+    // http connections and db pools are released when the JVM exits, also for TestNG runs outside Spring
+    private static void registerShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            log.info("Shut down http client pools and db pools");
+            HttpClientPoolHelper.shutdownAll();
+            DBCPDataSourceFactory.closeAll();
+        }, "ehapi-shutdown"));
+    }
+
+    // ehapi.lif.replica.* comes from auto_system_variable, so the replica is attached once the primary is up
+    private static void installLIFReplica() {
+        Map<String, String> dbPropertyMap = DataSourceRegistry.fetchDBPropertyMap();
+        Map<String, String> dbConnectMap = buildDBConnectMap(dbPropertyMap, "lif", "replica");
+        if (dbConnectMap.get("url").isEmpty() || getLIFSqlSessionManager() == null) {
+            log.info("No LIF replica configured, all LIF work uses the primary");
+            return;
+        }
+        SqlSessionManager replica = getSqlSessionManager("lif-replica", dbConnectMap,
+                buildDBPoolMap(dbPropertyMap, "lif", "replica"));
+        if (replica == null) {
+            log.error("Failed to create LIF replica, all LIF work uses the primary");
+            return;
+        }
+        LIFRoutingDataSource.install(getLIFSqlSessionManager(), replica.getConfiguration().getEnvironment().getDataSource());
+    }
+
     private static void fetchOtherConfig() {
         String sql = "select config_key, value from auto_system_variable where component = '-' or component is null";
         StringBuilder errorMessage = new StringBuilder();
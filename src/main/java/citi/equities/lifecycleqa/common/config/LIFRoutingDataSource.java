@@ -0,0 +1,97 @@
+package citi.equities.lifecycleqa.common.config;
+
+import citi.equities.lifecycleqa.common.enums.DSEnum;
+import citi.equities.lifecycleqa.common.helpers.DynamicDataSourceContextHolder;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * LIF datasource that hands out replica connections while the thread runs in a READ_ONLY / SLAVE
+ * context of {@link DynamicDataSourceContextHolder}, and primary connections otherwise.
+ * A replica that can not give a connection falls back to the primary.
+ */
+public class LIFRoutingDataSource implements DataSource {
+    private static final Logger log = LoggerFactory.getLogger(LIFRoutingDataSource.class);
+
+    private final DataSource primary;
+    private final DataSource replica;
+
+    private LIFRoutingDataSource(DataSource primary, DataSource replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    // swaps the environment datasource, sessions opened afterwards route per thread context
+    public static void install(SqlSessionManager sqlSessionManager, DataSource replica) {
+        Environment environment = sqlSessionManager.getConfiguration().getEnvironment();
+        DataSource primary = environment.getDataSource();
+        if (primary instanceof LIFRoutingDataSource) {
+            primary = ((LIFRoutingDataSource) primary).primary;
+        }
+        sqlSessionManager.getConfiguration().setEnvironment(new Environment(environment.getId(),
+                environment.getTransactionFactory(), new LIFRoutingDataSource(primary, replica)));
+        log.info("Route read only LIF work to the replica datasource");
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DSEnum context = DynamicDataSourceContextHolder.getDataSourceContext();
+        if (context == DSEnum.READ_ONLY || context == DSEnum.SLAVE) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                log.warn("Failed to get LIF replica connection, use primary: {}", e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LIF routing datasource only uses its configured credentials");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+
+    // pool lookups (metrics, LISTEN connection) see the primary
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+}
@@ -1,13 +1,15 @@
 package citi.equities.lifecycleqa.common.entities;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
 public class AutomationStepBasicInfo {
     private boolean isStepDebug;
@@ -20,4 +22,24 @@ public class AutomationStepBasicInfo {
     private String stepName;
     private int indexId;
     private JsonNode stepObject;
+    // responses captured in this run, keyed as response<stepId>, so assertions skip the audit round trip
+    private ObjectNode responses = JsonNodeFactory.instance.objectNode();
+    // reset for every step run, reported in Result.phases
+    private StepPhaseTimer phaseTimer = new StepPhaseTimer();
+    // global / scenario / xml placeholder values of this step, filled by PlaceholderPrefetchHelper
+    private Map<String, JsonNode> resolvedVariables = new HashMap<>();
+
+    public AutomationStepBasicInfo(boolean isStepDebug, String runId, int caseId, String region, String env,
+                                   ObjectNode variables, int stepId, String stepName, int indexId, JsonNode stepObject) {
+        this.isStepDebug = isStepDebug;
+        this.runId = runId;
+        this.caseId = caseId;
+        this.region = region;
+        this.env = env;
+        this.variables = variables;
+        this.stepId = stepId;
+        this.stepName = stepName;
+        this.indexId = indexId;
+        this.stepObject = stepObject;
+    }
 }
@@ -0,0 +1,23 @@
+package citi.equities.lifecycleqa.common.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A step sql with its placeholders compiled into bind parameters. The statement text stays the
+ * same across runs, so the driver and the pool can reuse the prepared statement and its plan.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ParameterizedSql {
+    // with ? markers, used for parsing and logs
+    private String sql;
+    // with #{params[i]} markers, executed by the DynamicPreparedSQL statement
+    private String mapperSql;
+    private List<Object> params = new ArrayList<>();
+}
@@ -0,0 +1,71 @@
+package citi.equities.lifecycleqa.common.entities;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.response.Response;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wraps an api response and parses its body at most once, so retry stop conditions,
+ * response capture and assertions of the same attempt share one parsed body.
+ */
+public class ParsedResponse {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Response response;
+    private byte[] body;
+    private String bodyString;
+    private JsonNode json;
+    private boolean jsonParsed;
+
+    private ParsedResponse(Response response) {
+        this.response = response;
+    }
+
+    public static ParsedResponse of(Response response) {
+        return response == null ? null : new ParsedResponse(response);
+    }
+
+    public Response getResponse() {
+        return response;
+    }
+
+    public int getStatusCode() {
+        return response.statusCode();
+    }
+
+    public synchronized boolean isBodyLoaded() {
+        return body != null;
+    }
+
+    public synchronized byte[] getBody() {
+        if (body == null) {
+            byte[] content = response.asByteArray();
+            body = content != null ? content : new byte[0];
+        }
+        return body;
+    }
+
+    public synchronized String getBodyString() {
+        if (bodyString == null) {
+            bodyString = new String(getBody(), StandardCharsets.UTF_8);
+        }
+        return bodyString;
+    }
+
+    /**
+     * @return the parsed json body, or null when the body is not valid json
+     */
+    public synchronized JsonNode getJson() {
+        if (!jsonParsed) {
+            try {
+                json = objectMapper.readTree(getBody());
+            } catch (Exception e) {
+                json = null;
+            }
+            jsonParsed = true;
+        }
+        return json;
+    }
+}
@@ -2,11 +2,15 @@ package citi.equities.lifecycleqa.common.entities;
 
 import lombok.Data;
 
+import java.util.Map;
+
 @Data
 public class Result {
     private long duration;
     private String status;
     private String error_message;
+    // milliseconds per step phase, see StepPhaseTimer
+    private Map<String, Long> phases;
 
     public Result() {
     }
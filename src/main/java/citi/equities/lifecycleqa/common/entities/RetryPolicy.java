@@ -0,0 +1,61 @@
+package citi.equities.lifecycleqa.common.entities;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Retry settings of a step "retry" block. Without a "backoff" object it keeps the former
+ * fixed-interval behaviour; "backoff" adds multiplier, maxInterval, jitter and maxElapsed (seconds).
+ * "notifyChannel" lets a DB wait be woken by a Postgres NOTIFY on that channel, see DBWaitHelper.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RetryPolicy {
+    private int maxAttempts = 1;
+    private long initialIntervalMillis;
+    private double multiplier = 1.0;
+    private long maxIntervalMillis = Long.MAX_VALUE;
+    private double jitter;
+    private long maxElapsedMillis;
+    private String notifyChannel;
+
+    public static RetryPolicy fixed(int maxAttempts, long intervalMillis) {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(Math.max(1, maxAttempts));
+        policy.setInitialIntervalMillis(Math.max(0L, intervalMillis));
+        return policy;
+    }
+
+    public static RetryPolicy fromRetryNode(JsonNode retryNode, int defaultAttempts, long defaultIntervalSeconds) {
+        if (retryNode == null || !retryNode.isObject()) {
+            return fixed(defaultAttempts, defaultIntervalSeconds * 1000L);
+        }
+        int attempts = retryNode.has("attempt") ? retryNode.get("attempt").asInt(defaultAttempts) : defaultAttempts;
+        long interval = retryNode.has("interval") ? retryNode.get("interval").asLong(defaultIntervalSeconds) : defaultIntervalSeconds;
+        RetryPolicy policy = fixed(attempts, interval * 1000L);
+
+        if (retryNode.has("notifyChannel")) {
+            policy.setNotifyChannel(retryNode.get("notifyChannel").asText(null));
+        }
+
+        JsonNode backoff = retryNode.get("backoff");
+        if (backoff != null && backoff.isObject()) {
+            if (backoff.has("multiplier")) {
+                policy.setMultiplier(Math.max(1.0, backoff.get("multiplier").asDouble(1.0)));
+            }
+            if (backoff.has("maxInterval")) {
+                policy.setMaxIntervalMillis(backoff.get("maxInterval").asLong() * 1000L);
+            }
+            if (backoff.has("jitter")) {
+                policy.setJitter(Math.min(1.0, Math.max(0.0, backoff.get("jitter").asDouble(0.0))));
+            }
+            if (backoff.has("maxElapsed")) {
+                policy.setMaxElapsedMillis(backoff.get("maxElapsed").asLong() * 1000L);
+            }
+        }
+        return policy;
+    }
+}
@@ -0,0 +1,71 @@
+package citi.equities.lifecycleqa.common.entities;
+
+import citi.equities.lifecycleqa.common.enums.StepPhase;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Wall time per phase of one step run, in milliseconds. Nested phases are exclusive, e.g. placeholder
+ * resolution inside a dependency check is counted as placeholder only, so the phases add up to the step
+ * duration and the rest is reported as "other" (retry waits, report building).
+ */
+public class StepPhaseTimer {
+    private final Map<StepPhase, Long> phases = new EnumMap<>(StepPhase.class);
+    private final Deque<long[]> running = new ArrayDeque<>();
+
+    public <T> T time(StepPhase phase, Supplier<T> call) {
+        long start = System.currentTimeMillis();
+        long[] frame = {start, 0L};
+        synchronized (this) {
+            running.push(frame);
+        }
+        try {
+            return call.get();
+        } finally {
+            long elapsed = System.currentTimeMillis() - start;
+            synchronized (this) {
+                running.remove(frame);
+                phases.merge(phase, Math.max(0L, elapsed - frame[1]), Long::sum);
+                long[] parent = running.peek();
+                if (parent != null) {
+                    parent[1] += elapsed;
+                }
+            }
+        }
+    }
+
+    public void time(StepPhase phase, Runnable call) {
+        time(phase, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    // for phases measured by the caller, e.g. connect time reported by the http client
+    public synchronized void add(StepPhase phase, long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        phases.merge(phase, millis, Long::sum);
+        long[] parent = running.peek();
+        if (parent != null) {
+            parent[1] += millis;
+        }
+    }
+
+    public synchronized Map<String, Long> snapshot(long totalMillis) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        long measured = 0L;
+        for (Map.Entry<StepPhase, Long> entry : phases.entrySet()) {
+            result.put(entry.getKey().getKey(), entry.getValue());
+            measured += entry.getValue();
+        }
+        result.put("other", Math.max(0L, totalMillis - measured));
+        return result;
+    }
+}
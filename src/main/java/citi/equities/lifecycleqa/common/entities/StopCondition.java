@@ -11,6 +11,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @Data
 @AllArgsConstructor
@@ -63,6 +64,31 @@ public class StopCondition {
     public boolean evaluateForAPI(String responseBody) {
         if (responseBody == null) return false;
 
+        JsonNode[] parsed = new JsonNode[1];
+        boolean[] parseFailed = new boolean[1];
+        return evaluateForAPI(responseBody, () -> {
+            if (parsed[0] == null && !parseFailed[0]) {
+                try {
+                    parsed[0] = objectMapper.readTree(responseBody);
+                } catch (Exception e) {
+                    parseFailed[0] = true;
+                }
+            }
+            return parsed[0];
+        });
+    }
+
+    public boolean evaluateForAPI(ParsedResponse response) {
+        if (response == null) return false;
+        if (contentEquals == null && contentContains == null && largerThanSize == null && lessThanSize == null
+                && jsonContains == null && jsonContainsKey == null) {
+            return true;
+        }
+        return evaluateForAPI(response.getBodyString(), response::getJson);
+    }
+
+    // jsonSupplier returns null when the body is not valid json, and is only called when a json condition is set
+    private boolean evaluateForAPI(String responseBody, Supplier<JsonNode> jsonSupplier) {
         boolean contentEqualValid = contentEquals == null || responseBody.equals(contentEquals.toString());
         boolean contentContainsValid = contentContains == null || responseBody.toLowerCase().contains(contentContains.toLowerCase());
 
@@ -88,48 +114,44 @@ public class StopCondition {
 
         boolean jsonContainsValid = true;
         if (jsonContains != null) {
-            try {
-                JsonNode jsonNode = objectMapper.readTree(responseBody);
-                if (jsonNode.isObject()) {
-                    ObjectNode objectNode = (ObjectNode) jsonNode;
-                    var fields = jsonContains.fields();
-                    while (fields.hasNext()) {
-                        var entry = fields.next();
-                        String key = entry.getKey();
-                        String expectedValue = entry.getValue().asText();
-                        String actualValue = objectNode.has(key) ? objectNode.get(key).asText() : null;
-
-                        if (actualValue == null) {
-                            jsonContainsValid = false;
-                            break;
-                        }
+            JsonNode jsonNode = jsonSupplier.get();
+            if (jsonNode == null) {
+                log.debug("Error parsing JSON for jsonContains validation");
+            } else if (jsonNode.isObject()) {
+                ObjectNode objectNode = (ObjectNode) jsonNode;
+                var fields = jsonContains.fields();
+                while (fields.hasNext()) {
+                    var entry = fields.next();
+                    String key = entry.getKey();
+                    String expectedValue = entry.getValue().asText();
+                    String actualValue = objectNode.has(key) ? objectNode.get(key).asText() : null;
+
+                    if (actualValue == null) {
+                        jsonContainsValid = false;
+                        break;
+                    }
 
-                        if (expectedValue.startsWith("%") && expectedValue.endsWith("%")) {
-                            String pattern = expectedValue.substring(1, expectedValue.length() - 1);
-                            if (!actualValue.toLowerCase().contains(pattern.toLowerCase())) {
-                                jsonContainsValid = false;
-                                break;
-                            }
-                        } else if (!actualValue.equals(expectedValue)) {
+                    if (expectedValue.startsWith("%") && expectedValue.endsWith("%")) {
+                        String pattern = expectedValue.substring(1, expectedValue.length() - 1);
+                        if (!actualValue.toLowerCase().contains(pattern.toLowerCase())) {
                             jsonContainsValid = false;
                             break;
                         }
+                    } else if (!actualValue.equals(expectedValue)) {
+                        jsonContainsValid = false;
+                        break;
                     }
                 }
-            } catch (Exception e) {
-                log.debug("Error parsing JSON for jsonContains validation: {}", e.getMessage());
             }
         }
 
         boolean jsonContainKeyValid = true;
         if (jsonContainsKey != null) {
-            try {
-                JsonNode jsonNode = objectMapper.readTree(responseBody);
-                if (jsonNode.isObject()) {
-                    jsonContainKeyValid = jsonNode.has(jsonContainsKey);
-                }
-            } catch (Exception e) {
+            JsonNode jsonNode = jsonSupplier.get();
+            if (jsonNode == null) {
                 jsonContainKeyValid = false;
+            } else if (jsonNode.isObject()) {
+                jsonContainKeyValid = jsonNode.has(jsonContainsKey);
             }
         }
 
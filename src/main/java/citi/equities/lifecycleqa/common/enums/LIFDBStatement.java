@@ -3,8 +3,11 @@ package citi.equities.lifecycleqa.common.enums;
 public enum LIFDBStatement {
     InsertAutoProgressFromAudit(false, -1, -1),
     InsertAutoCaseAudit(false, -1, -1),
+    InsertAutoCaseAuditRow(false, -1, -1),
     UpdateAutoProgress(false, -1, -1),
+    AddAutoProgressCounts(false, -1, -1),
     UpdateAutoCaseAudit(false, -1, -1),
+    MergeAutoCaseAuditTestData(false, -1, -1),
     DeleteAutoCasesByIdList(false, -1, -1),
     InsertAutoCase(false, -1, -1),
     UpdateAutoCasePassrate(false, -1, -1),
@@ -19,6 +22,7 @@ public enum LIFDBStatement {
     FetchAutoCaseUIMethod(true, -1, -1),
     FetchEhService(true, -1, -1),
     DynamicSQL(false, -1, -1),
+    DynamicPreparedSQL(false, -1, -1),
     FetchAutoCaseAuditForAutoCaseUI(true, -1, -1),
     BuildFeaturesByRunId(true, -1, -1),
     BuildConfigByRunId(true, -1, -1),
@@ -56,6 +60,13 @@ public enum LIFDBStatement {
     updateUpdateAtBySpecificAttributionAndValue(false, -1, -1),
     selectStringListBySQL(true, -1, -1),
     FetchAutoCaseAudit(true, -1, -1),
+    FetchAutoCaseAuditTestData(true, 1, 1),
+    FetchAutoCaseAuditRowAsJson(true, 1, 1),
+    FetchAutoSystemVariablesByPatterns(true, -1, -1),
+    FetchAutoCaseXmlFileValues(true, -1, -1),
+    FetchAutomationVariablesForCache(true, -1, -1),
+    FetchAutoCaseXmlFilesForCache(true, -1, -1),
+    FetchAutoCaseAuditComponent(true, 1, 1),
     deleteAutoCaseScenarioByIdList(false, -1, -1),
     saveAutoCaseUIElement(false, -1, -1),
     updateAutoCaseUIElement(false, -1, -1),
@@ -103,6 +114,11 @@ public enum LIFDBStatement {
         return columnNumber;
     }
 
+    public boolean isBaseUrlChange() {
+        return this == updateBaseUrlIntoAutoBaseURL || this == insertBaseUrlIntoAutoBaseURL
+                || this == deleteFromAutoBaseUrlByServiceName;
+    }
+
     public static boolean isValid(String value) {
         if (value == null) return false;
         for (LIFDBStatement r : LIFDBStatement.values()) {
@@ -0,0 +1,25 @@
+package citi.equities.lifecycleqa.common.enums;
+
+public enum StepPhase {
+    Placeholder("placeholder"),
+    Dependency("dependency"),
+    DBSetup("dbSetup"),
+    Queue("queue"),
+    DNS("dns"),
+    Connect("connect"),
+    // request sent until the whole body is read by the client: server time plus body transfer
+    Response("response"),
+    // stop condition checks, body capture and json parse
+    ResponseHandling("responseHandling"),
+    Assertion("assertion");
+
+    private final String key;
+
+    StepPhase(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
@@ -5,13 +5,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import citi.equities.lifecycleqa.common.config.InitialConfig;
 import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
+import citi.equities.lifecycleqa.common.entities.ParsedResponse;
+import citi.equities.lifecycleqa.common.entities.RetryPolicy;
+import citi.equities.lifecycleqa.common.entities.StepPhaseTimer;
 import citi.equities.lifecycleqa.common.entities.StopCondition;
+import citi.equities.lifecycleqa.common.enums.StepPhase;
 import citi.equities.lifecycleqa.common.utils.DataTypeUtil;
-import io.github.resilience4j.retry.Retry;
-import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
 import io.restassured.RestAssured;
 import io.restassured.builder.ResponseBuilder;
-import io.restassured.config.HttpClientConfig;
 import io.restassured.config.RestAssuredConfig;
 import io.restassured.http.ContentType;
 import io.restassured.response.Response;
@@ -20,90 +24,171 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.time.Duration;
-import java.util.HashMap;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeoutException;
 
 public class APIRequestHelper {
     private static final Logger log = LoggerFactory.getLogger(APIRequestHelper.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    private static final Set<String> SUPPORTED_METHODS = Set.of("post", "get", "put", "delete");
+
     public static void handleAPIRequest(AutomationStepBasicInfo baseInfo, StringBuilder output, StringBuilder errorMessage) {
+        PreparedRequest prepared = prepareAPIRequest(baseInfo, output, errorMessage);
+        if (prepared == null) {
+            return;
+        }
+
+        RestAssuredConfig config = HttpClientPoolHelper.fetchRestAssuredConfig(prepared.baseUrl,
+                prepared.connectTimeoutMillis, prepared.readTimeoutMillis);
+
+        RequestSpecification finalRequest = RestAssured.given().config(config).baseUri(prepared.baseUrl);
+        if (prepared.baseUrl.startsWith("https://")) {
+            finalRequest = finalRequest.relaxedHTTPSValidation();
+        }
+
+        processAPIContent(finalRequest, prepared.requestData, prepared.method, errorMessage);
+        if (isContentRejected(errorMessage)) {
+            return;
+        }
+
+        ParsedResponse response;
+        ResponseCaptureHelper.beginCapture(baseInfo);
+        try {
+            response = triggerAPIRequest(finalRequest, prepared.serviceName, prepared.endpointKey, prepared.method,
+                    prepared.path, prepared.retryObject, prepared.readTimeoutMillis, baseInfo.getPhaseTimer());
+        } catch (Throwable exception) {
+            response = ParsedResponse.of(processAPIRequestException(exception, prepared.readTimeoutMillis));
+        } finally {
+            ResponseCaptureHelper.endCapture();
+        }
+
+        saveResponse(baseInfo, response, output, errorMessage);
+    }
+
+    /**
+     * Async mode counterpart of handleAPIRequest: the request is validated like the sync path, then sent and retried
+     * without holding the calling thread. The future never fails, errors come back as the same 4xx/5xx responses as
+     * on the sync path, and it completes with null when the request was rejected before sending (see errorMessage).
+     * The caller saves the response with saveResponse once it has it.
+     */
+    public static CompletableFuture<ParsedResponse> handleAPIRequestAsync(AutomationStepBasicInfo baseInfo, StringBuilder output,
+                                                                          StringBuilder errorMessage) {
+        PreparedRequest prepared = prepareAPIRequest(baseInfo, output, errorMessage);
+        if (prepared == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        HttpRequest request = null;
+        try {
+            request = AsyncAPIRequestHelper.buildHttpRequest(prepared.baseUrl, prepared.method, prepared.path,
+                    prepared.requestData, prepared.readTimeoutMillis);
+        } catch (Exception e) {
+            DataTypeUtil.appendErrorMessage(errorMessage, "Error sending request: " + e.getMessage());
+        }
+        if (isContentRejected(errorMessage)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return AsyncAPIRequestHelper.triggerAPIRequestAsync(prepared.serviceName, prepared.endpointKey, prepared.method,
+                        prepared.path, request, prepared.retryObject, baseInfo.getPhaseTimer())
+                .handle((response, exception) -> {
+                    if (exception == null) {
+                        return response;
+                    }
+                    Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                            ? exception.getCause() : exception;
+                    return ParsedResponse.of(processAPIRequestException(cause, prepared.readTimeoutMillis));
+                });
+    }
+
+    // null when the step can not be sent, the reason is in errorMessage
+    private static PreparedRequest prepareAPIRequest(AutomationStepBasicInfo baseInfo, StringBuilder output, StringBuilder errorMessage) {
         JsonNode stepObject = baseInfo.getStepObject();
         JsonNode testObject = stepObject.has("test") ? stepObject.get("test") : objectMapper.createObjectNode();
 
         JsonNode testObjectFinal = PlaceholderReplaceHelper.replaceDataObjectForTestDataAndAutoSystemVariables(
                 baseInfo, testObject, errorMessage);
 
-        String path = testObjectFinal.has("path") ? testObjectFinal.get("path").asText("") : "";
-        String method = testObjectFinal.has("method") ? testObjectFinal.get("method").asText("") : "";
+        PreparedRequest prepared = new PreparedRequest();
+        prepared.path = testObjectFinal.has("path") ? testObjectFinal.get("path").asText("") : "";
+        prepared.method = testObjectFinal.has("method") ? testObjectFinal.get("method").asText("") : "";
 
         // 从 variables 中获取 serviceName，如果没有则从测试对象获取
-        String serviceName;
         if (baseInfo.getVariables() != null && baseInfo.getVariables().has("serviceName")) {
-            serviceName = baseInfo.getVariables().get("serviceName").asText();
+            prepared.serviceName = baseInfo.getVariables().get("serviceName").asText();
         } else {
-            serviceName = testObjectFinal.has("serviceName") ? testObjectFinal.get("serviceName").asText("") : "";
+            prepared.serviceName = testObjectFinal.has("serviceName") ? testObjectFinal.get("serviceName").asText("") : "";
         }
 
-        String baseUrl = InitialConfig.fetchBaseUrl(serviceName, baseInfo.getRegion() + baseInfo.getEnv());
+        prepared.baseUrl = InitialConfig.fetchBaseUrl(prepared.serviceName, baseInfo.getRegion() + baseInfo.getEnv());
 
-        if (baseUrl == null || baseUrl.isBlank()) {
+        if (prepared.baseUrl == null || prepared.baseUrl.isBlank()) {
             errorMessage.setLength(0);
             DataTypeUtil.appendErrorMessage(errorMessage, "\nError: baseUrl is null");
             log.error("Error: baseUrl is null");
-            if (errorMessage.length() > 0) {
-                return;
-            }
+            return null;
+        }
+
+        if (!SUPPORTED_METHODS.contains(prepared.method.toLowerCase())) {
+            DataTypeUtil.appendErrorMessage(errorMessage, "\nError: Unsupported method '" + prepared.method +
+                    "', should be one of " + SUPPORTED_METHODS);
+            log.error("Error: Unsupported method '{}' for path {}", prepared.method, prepared.path);
+            return null;
         }
 
-        JsonNode requestData;
         try {
-            requestData = testObjectFinal.has("request") ? testObjectFinal.get("request") : objectMapper.createObjectNode();
+            prepared.requestData = testObjectFinal.has("request") ? testObjectFinal.get("request") : objectMapper.createObjectNode();
         } catch (Exception e) {
-            requestData = objectMapper.createObjectNode();
+            prepared.requestData = objectMapper.createObjectNode();
         }
 
         String startMessage = "------------------------------------------------------------------\n" +
                 "API Trigger for Step: '" + baseInfo.getStepName() + "'\n" +
-                "BaseUrl: " + baseUrl + "\n" +
-                "Path: " + path + "\n" +
-                "Method: " + method + "\n" +
-                "Request: " + requestData + "\n";
+                "BaseUrl: " + prepared.baseUrl + "\n" +
+                "Path: " + prepared.path + "\n" +
+                "Method: " + prepared.method + "\n" +
+                "Request: " + prepared.requestData + "\n";
         log.info(startMessage);
         output.append(startMessage).append("\n");
 
         int requestTimeout = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("request.timeout.min", "5").toString());
-        RestAssuredConfig config = RestAssuredConfig.config()
-                .httpClient(HttpClientConfig.httpClientConfig()
-                        .setParam("http.socket.timeout", requestTimeout * 60 * 1000)
-                        .setParam("http.connection.timeout", requestTimeout * 60 * 1000));
-
-        RequestSpecification finalRequest = RestAssured.given().config(config).baseUri(baseUrl);
-        if (baseUrl != null && baseUrl.startsWith("https://")) {
-            finalRequest = finalRequest.relaxedHTTPSValidation();
-        }
-
-        processAPIContent(finalRequest, requestData, method, errorMessage);
+        prepared.retryObject = testObjectFinal.has("retry") ? testObjectFinal.get("retry") : null;
+        prepared.endpointKey = EndpointLatencyHelper.buildEndpointKey(prepared.serviceName, prepared.method,
+                testObject.path("path").asText(""));
+        prepared.readTimeoutMillis = EndpointLatencyHelper.resolveReadTimeoutMillis(prepared.endpointKey,
+                prepared.retryObject, requestTimeout * 60 * 1000L);
+        prepared.connectTimeoutMillis = EndpointLatencyHelper.resolveConnectTimeoutMillis(prepared.retryObject,
+                prepared.readTimeoutMillis);
+        return prepared;
+    }
 
-        if (errorMessage.length() > 0) {
-            String message = "Failed to process API content, with error: " + errorMessage;
-            log.error(message);
-            errorMessage.setLength(0);
-            errorMessage.append(message).append("\n");
-            return;
+    // placeholder and request content errors stop the step before anything is sent
+    private static boolean isContentRejected(StringBuilder errorMessage) {
+        if (errorMessage.length() == 0) {
+            return false;
         }
+        String message = "Failed to process API content, with error: " + errorMessage;
+        log.error(message);
+        errorMessage.setLength(0);
+        errorMessage.append(message).append("\n");
+        return true;
+    }
 
-        Response response;
-        try {
-            JsonNode retryObject = testObjectFinal.has("retry") ? testObjectFinal.get("retry") : null;
-            response = triggerAPIRequest(finalRequest, method, path, retryObject);
-        } catch (Throwable exception) {
-            response = processAPIRequestException(exception, requestTimeout);
+    static Map<String, String> collectTextFields(JsonNode requestData, String field) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (requestData.has(field) && requestData.get(field).isObject()) {
+            requestData.get(field).fields().forEachRemaining(entry ->
+                    values.put(entry.getKey(), entry.getValue().asText("")));
         }
-
-        saveResponse(baseInfo, response, output, errorMessage);
+        return values;
     }
 
     private static void processAPIContent(RequestSpecification finalRequest, JsonNode requestData, String method, StringBuilder errorMessage) {
@@ -111,17 +196,13 @@ public class APIRequestHelper {
             finalRequest.cookie("SMSESSION", requestData.get("cookie").asText());
         }
 
-        if (requestData.has("headers") && requestData.get("headers").isObject()) {
-            Map<String, String> headers = new HashMap<>();
-            requestData.get("headers").fields().forEachRemaining(entry ->
-                    headers.put(entry.getKey(), entry.getValue().asText("")));
+        Map<String, String> headers = collectTextFields(requestData, "headers");
+        if (!headers.isEmpty()) {
             finalRequest.headers(headers);
         }
 
-        if (requestData.has("pathParams") && requestData.get("pathParams").isObject()) {
-            Map<String, String> pathParams = new HashMap<>();
-            requestData.get("pathParams").fields().forEachRemaining(entry ->
-                    pathParams.put(entry.getKey(), entry.getValue().asText("")));
+        Map<String, String> pathParams = collectTextFields(requestData, "pathParams");
+        if (!pathParams.isEmpty()) {
             finalRequest.pathParams(pathParams);
         }
 
@@ -142,9 +223,7 @@ public class APIRequestHelper {
         }
 
         if (requestData.has("params") && requestData.get("params").isObject()) {
-            Map<String, String> params = new HashMap<>();
-            requestData.get("params").fields().forEachRemaining(entry ->
-                    params.put(entry.getKey(), entry.getValue().asText("")));
+            Map<String, String> params = collectTextFields(requestData, "params");
 
             if (!requestData.has("body") && method.equalsIgnoreCase("get")) {
                 try {
@@ -158,51 +237,70 @@ public class APIRequestHelper {
         }
     }
 
-    private static Response triggerAPIRequest(RequestSpecification finalRequest, String method, String path, JsonNode retryObject) {
-        int attempt = 2;
-        long interval = 0L;
-
-        if (retryObject != null) {
-            attempt = retryObject.has("attempt") ? retryObject.get("attempt").asInt(2) : 2;
-            interval = retryObject.has("interval") ? retryObject.get("interval").asLong(0L) : 0L;
-        }
-
+    private static ParsedResponse triggerAPIRequest(RequestSpecification finalRequest, String serviceName, String endpointKey,
+                                                    String method, String path, JsonNode retryObject, long readTimeoutMillis,
+                                                    StepPhaseTimer phaseTimer) {
+        RetryPolicy retryPolicy = RetryPolicy.fromRetryNode(retryObject, 2, 0L);
         StopCondition stopCondition = parseStopCondition(retryObject);
 
-        RetryConfig retryConfig = createRetryConfig(attempt, interval, stopCondition);
-        Retry retry = Retry.of("apiRetry", retryConfig);
-        final int[] attemptCounter = {1};
-        final long finalInterval = interval;
+        return RetrySchedulerHelper.executeWithRetry("apiRetry", attempt -> {
+            log.info("Trigger API request with method: {}, path: {} with retry {} time, interval {} second",
+                    method, path, attempt, retryPolicy.getInitialIntervalMillis() / 1000);
+            long queued = System.currentTimeMillis();
+            return ServiceGuardHelper.executeGuarded(serviceName, () -> {
+                long start = System.currentTimeMillis();
+                phaseTimer.add(StepPhase.Queue, start - queued);
+                HttpClientPoolHelper.resetConnectTiming();
+                Response response;
+                try {
+                    switch (method.toLowerCase()) {
+                        case "post":
+                            response = finalRequest.when().post(path);
+                            break;
+                        case "get":
+                            response = finalRequest.when().get(path);
+                            break;
+                        case "put":
+                            response = finalRequest.when().put(path);
+                            break;
+                        case "delete":
+                            response = finalRequest.when().delete(path);
+                            break;
+                        default:
+                            response = null;
+                    }
+                } catch (Throwable throwable) {
+                    if (isTimeoutException(throwable)) {
+                        EndpointLatencyHelper.recordLatency(endpointKey, readTimeoutMillis);
+                    }
+                    throw throwable;
+                }
+                long elapsed = System.currentTimeMillis() - start;
+                if (response != null) {
+                    EndpointLatencyHelper.recordLatency(endpointKey, elapsed);
+                }
+                // rest assured reads the whole body before returning, so the rest of the call is server time plus transfer
+                long dns = HttpClientPoolHelper.fetchDnsMillis();
+                long connect = HttpClientPoolHelper.fetchConnectMillis();
+                phaseTimer.add(StepPhase.DNS, dns);
+                phaseTimer.add(StepPhase.Connect, connect);
+                phaseTimer.add(StepPhase.Response, elapsed - dns - connect);
+                return ParsedResponse.of(response);
+            });
+        }, response -> phaseTimer.time(StepPhase.ResponseHandling, () -> !stopCondition.evaluateForAPI(response)),
+                APIRequestHelper::isRetryableException, retryPolicy);
+    }
 
-        retry.getEventPublisher().onRetry(event -> {
-            attemptCounter[0] = event.getNumberOfRetryAttempts() + 1;
-        });
+    static boolean isTimeoutException(Throwable throwable) {
+        return throwable instanceof TimeoutException || throwable instanceof HttpTimeoutException
+                || throwable instanceof SocketTimeoutException;
+    }
 
-        return Retry.decorateSupplier(retry, () -> {
-            log.info("Trigger API request with method: {}, path: {} with retry {} time, interval {} second",
-                    method, path, attemptCounter[0], finalInterval);
-            Response response;
-            switch (method.toLowerCase()) {
-                case "post":
-                    response = finalRequest.when().post(path);
-                    break;
-                case "get":
-                    response = finalRequest.when().get(path);
-                    break;
-                case "put":
-                    response = finalRequest.when().put(path);
-                    break;
-                case "delete":
-                    response = finalRequest.when().delete(path);
-                    break;
-                default:
-                    response = null;
-            }
-            return response;
-        }).get();
+    static boolean isRetryableException(Throwable throwable) {
+        return throwable instanceof IOException || throwable instanceof TimeoutException;
     }
 
-    private static StopCondition parseStopCondition(JsonNode retryObject) {
+    static StopCondition parseStopCondition(JsonNode retryObject) {
         if (retryObject == null || !retryObject.has("stopCondition")) {
             return new StopCondition();
         }
@@ -235,14 +333,22 @@ public class APIRequestHelper {
         return stopCondition;
     }
 
-    private static Response processAPIRequestException(Throwable exception, int requestTimeout) {
+    private static Response processAPIRequestException(Throwable exception, long timeoutMillis) {
         ResponseBuilder responseBuilder = new ResponseBuilder();
 
-        if (exception instanceof TimeoutException) {
+        if (exception instanceof CallNotPermittedException || exception instanceof BulkheadFullException
+                || exception instanceof RequestNotPermitted) {
+            responseBuilder.setStatusCode(503);
+            responseBuilder.setHeader("Content-Type", "application/json");
+            ObjectNode body = objectMapper.createObjectNode();
+            body.put("error", "Request rejected by eh.api without calling the service: " + exception.getMessage() +
+                    ". The service keeps failing, is saturated or exceeds its rate limit, please check it and try again later.");
+            responseBuilder.setBody(body.toString());
+        } else if (isTimeoutException(exception)) {
             responseBuilder.setStatusCode(408);
             responseBuilder.setHeader("Content-Type", "application/json");
             ObjectNode body = objectMapper.createObjectNode();
-            body.put("error", "Request timed out which occur in eh.api with timeout = " + requestTimeout + " mins. Please try again later.");
+            body.put("error", "Request timed out which occur in eh.api with timeout = " + timeoutMillis / 1000 + " seconds. Please try again later.");
             responseBuilder.setBody(body.toString());
         } else if (exception instanceof IllegalStateException) {
             if (exception.getMessage() != null && exception.getMessage().contains("Target host is null")) {
@@ -269,29 +375,17 @@ public class APIRequestHelper {
         return responseBuilder.build();
     }
 
-    private static void saveResponse(AutomationStepBasicInfo baseInfo, Response response, StringBuilder output, StringBuilder errorMessage) {
+    static void saveResponse(AutomationStepBasicInfo baseInfo, ParsedResponse response, StringBuilder output, StringBuilder errorMessage) {
         if (response == null) {
             DataTypeUtil.appendErrorMessage(errorMessage, "\nError: Response is null");
             return;
         }
 
-        String responseHeaders = response.headers().toString();
-        String responseString = cleanString(response.then().extract().asString());
-        if (responseString.length() > 2147483600) {
-            responseString = responseString.substring(0, 2147483600);
-        }
-
-        JsonNode responseInDB = DataTypeUtil.convertToJsonNode(responseString);
+        ObjectNode responseHeadersInDB = ResponseCaptureHelper.captureHeaders(response.getResponse());
+        JsonNode responseInDB = baseInfo.getPhaseTimer().time(StepPhase.ResponseHandling,
+                () -> ResponseCaptureHelper.captureBody(baseInfo, response));
 
-        ObjectNode responseHeadersInDB = objectMapper.createObjectNode();
-        for (String line : responseHeaders.split("\n")) {
-            String[] parts = line.split("=", 2);
-            String key = parts[0];
-            String value = parts.length > 1 ? parts[1] : "";
-            responseHeadersInDB.put(key, value);
-        }
-
-        int statusCode = response.statusCode();
+        int statusCode = response.getStatusCode();
 
         output.append("* StatusCode: ").append(statusCode).append("\n");
         output.append("* Response: ").append(responseInDB).append("\n");
@@ -301,6 +395,7 @@ public class APIRequestHelper {
             responseData.set("responseHeaders", responseHeadersInDB);
             responseData.set("responseBody", responseInDB);
             responseData.put("statusCode", statusCode);
+            baseInfo.getResponses().set("response" + baseInfo.getStepId(), responseData);
 
             DBExecutionHelper.updateTestDataInAutoCaseAudit(
                     baseInfo,
@@ -313,16 +408,15 @@ public class APIRequestHelper {
         }
     }
 
-    private static RetryConfig createRetryConfig(int attempt, long interval, StopCondition stopCondition) {
-        return RetryConfig.<Response>custom()
-                .maxAttempts(attempt)
-                .waitDuration(Duration.ofSeconds(interval))
-                .retryExceptions(IOException.class, TimeoutException.class)
-                .retryOnResult(response -> !stopCondition.evaluateForAPI(response.asString()))
-                .build();
-    }
-
-    private static String cleanString(String input) {
-        return input.replaceAll("[^\\x20-\\x7E]", "");
+    private static class PreparedRequest {
+        private String serviceName;
+        private String baseUrl;
+        private String method;
+        private String path;
+        private String endpointKey;
+        private JsonNode requestData;
+        private JsonNode retryObject;
+        private long readTimeoutMillis;
+        private long connectTimeoutMillis;
     }
 }
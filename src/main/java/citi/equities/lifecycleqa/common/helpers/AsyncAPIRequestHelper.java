@@ -0,0 +1,204 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.config.InitialConfig;
+import citi.equities.lifecycleqa.common.entities.ParsedResponse;
+import citi.equities.lifecycleqa.common.entities.RetryPolicy;
+import citi.equities.lifecycleqa.common.entities.StepPhaseTimer;
+import citi.equities.lifecycleqa.common.entities.StopCondition;
+import citi.equities.lifecycleqa.common.enums.StepPhase;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.builder.ResponseBuilder;
+import io.restassured.http.Header;
+import io.restassured.http.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Async execution path for API steps, enabled by request.execution.mode=async.
+ * Requests go through the JDK async http client, so socket I/O, retry waits and bulkhead / rate limit waits
+ * run on the client and scheduler threads instead of the step's worker. The TestNG case method is still
+ * synchronous and its worker waits for the response (StepHelper.awaitResponse), so requests in flight stay
+ * bounded by the TestNG thread count; this mode does not lift that limit.
+ */
+public class AsyncAPIRequestHelper {
+    private static final Logger log = LoggerFactory.getLogger(AsyncAPIRequestHelper.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private static volatile HttpClient httpClient;
+
+    public static boolean isAsyncMode() {
+        return "async".equalsIgnoreCase(InitialConfig.INFO_CONFIG.getOrDefault("request.execution.mode", "sync").toString());
+    }
+
+    // the request is built once by buildHttpRequest and sent again as is on each retry
+    public static CompletableFuture<ParsedResponse> triggerAPIRequestAsync(String serviceName, String endpointKey, String method, String path,
+                                                                           HttpRequest request, JsonNode retryObject, StepPhaseTimer phaseTimer) {
+        RetryPolicy retryPolicy = RetryPolicy.fromRetryNode(retryObject, 2, 0L);
+        StopCondition stopCondition = APIRequestHelper.parseStopCondition(retryObject);
+
+        return RetrySchedulerHelper.scheduleWithRetry("asyncApiRetry", attempt -> {
+            log.info("Trigger async API request with method: {}, path: {} with retry {} time, interval {} second",
+                    method, path, attempt, retryPolicy.getInitialIntervalMillis() / 1000);
+            long queued = System.currentTimeMillis();
+            return ServiceGuardHelper.executeGuardedAsync(serviceName, () -> {
+                long start = System.currentTimeMillis();
+                phaseTimer.add(StepPhase.Queue, start - queued);
+                return fetchHttpClient().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                        .whenComplete((httpResponse, exception) -> {
+                            Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                                    ? exception.getCause() : exception;
+                            if (cause != null && APIRequestHelper.isTimeoutException(cause)) {
+                                request.timeout().ifPresent(timeout -> EndpointLatencyHelper.recordLatency(endpointKey, timeout.toMillis()));
+                            }
+                        })
+                        .thenApply(httpResponse -> {
+                            long elapsed = System.currentTimeMillis() - start;
+                            EndpointLatencyHelper.recordLatency(endpointKey, elapsed);
+                            // the jdk client reads the whole body and exposes no dns/connect timing, all of it is response
+                            phaseTimer.add(StepPhase.Response, elapsed);
+                            return convertToResponse(httpResponse);
+                        });
+            });
+        }, response -> !stopCondition.evaluateForAPI(response), APIRequestHelper::isRetryableException, retryPolicy);
+    }
+
+    // baseUrl, method and placeholders are validated by APIRequestHelper before, as for the sync path
+    static HttpRequest buildHttpRequest(String baseUrl, String method, String path, JsonNode requestData, long requestTimeoutMillis) {
+        String finalPath = path;
+        for (Map.Entry<String, String> entry : APIRequestHelper.collectTextFields(requestData, "pathParams").entrySet()) {
+            finalPath = finalPath.replace("{" + entry.getKey() + "}",
+                    URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8).replace("+", "%20"));
+        }
+
+        StringJoiner query = new StringJoiner("&");
+        APIRequestHelper.collectTextFields(requestData, "params").forEach((key, value) ->
+                query.add(URLEncoder.encode(key, StandardCharsets.UTF_8) + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8)));
+
+        String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        String uri = base + (finalPath.isEmpty() || finalPath.startsWith("/") ? finalPath : "/" + finalPath);
+        if (query.length() > 0) {
+            uri = uri + (uri.contains("?") ? "&" : "?") + query;
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(uri))
+                .timeout(Duration.ofMillis(requestTimeoutMillis));
+
+        APIRequestHelper.collectTextFields(requestData, "headers").forEach((name, value) -> {
+            // the jdk client sets these itself and rejects them, the sync client would send them
+            if (RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                log.warn("Skip header {} in async mode, it is set by the http client", name);
+                return;
+            }
+            builder.header(name, value);
+        });
+        if (requestData.has("cookie") && requestData.get("cookie").isTextual()) {
+            builder.header("Cookie", "SMSESSION=" + requestData.get("cookie").asText());
+        }
+
+        HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.noBody();
+        if (requestData.has("body")) {
+            JsonNode body = requestData.get("body");
+            String bodyContent;
+            String contentType;
+            if (body.isObject() || body.isArray()) {
+                bodyContent = body.toString();
+                contentType = "application/json";
+            } else {
+                bodyContent = body.asText("").trim();
+                contentType = bodyContent.startsWith("<") && bodyContent.endsWith(">") && bodyContent.contains("</")
+                        ? "application/xml" : "text/plain";
+                bodyContent = bodyContent.replace("\\\"", "\"");
+            }
+            if (!requestData.has("headers") || !requestData.get("headers").has("Content-Type")) {
+                builder.header("Content-Type", contentType + "; charset=UTF-8");
+            }
+            bodyPublisher = HttpRequest.BodyPublishers.ofString(bodyContent, StandardCharsets.UTF_8);
+        }
+
+        return builder.method(method.toUpperCase(), bodyPublisher).build();
+    }
+
+    private static ParsedResponse convertToResponse(HttpResponse<byte[]> httpResponse) {
+        List<Header> headerList = new ArrayList<>();
+        httpResponse.headers().map().forEach((name, values) ->
+                values.forEach(value -> headerList.add(new Header(name, value))));
+
+        ResponseBuilder responseBuilder = new ResponseBuilder();
+        responseBuilder.setStatusCode(httpResponse.statusCode());
+        responseBuilder.setHeaders(new Headers(headerList));
+        httpResponse.headers().firstValue("Content-Type").ifPresent(responseBuilder::setContentType);
+        responseBuilder.setBody(httpResponse.body());
+        return ParsedResponse.of(responseBuilder.build());
+    }
+
+    private static HttpClient fetchHttpClient() {
+        if (httpClient == null) {
+            synchronized (AsyncAPIRequestHelper.class) {
+                if (httpClient == null) {
+                    int threads = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("request.async.threads", "4").toString());
+                    AtomicInteger index = new AtomicInteger();
+                    ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+                        Thread thread = new Thread(runnable, "async-api-" + index.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    httpClient = HttpClient.newBuilder()
+                            .executor(executor)
+                            .sslContext(buildTrustAllSslContext())
+                            .followRedirects(HttpClient.Redirect.NORMAL)
+                            .build();
+                }
+            }
+        }
+        return httpClient;
+    }
+
+    // same behaviour as relaxedHTTPSValidation() on the sync path
+    private static SSLContext buildTrustAllSslContext() {
+        try {
+            TrustManager[] trustAll = new TrustManager[]{new X509TrustManager() {
+                public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+            }};
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustAll, new SecureRandom());
+            return sslContext;
+        } catch (Exception e) {
+            log.error("Failed to build relaxed SSLContext: {}", e.getMessage());
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.config.InitialConfig;
+import citi.equities.lifecycleqa.common.enums.LIFDBStatement;
+import citi.equities.lifecycleqa.common.utils.DBUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background writer for the end-of-case LIF updates. Case results and auto_progress deltas are queued by
+ * the test workers and written by one thread: case results as a JDBC batch, progress deltas summed per runId
+ * into one update, so parallel workers no longer queue on the auto_progress row lock.
+ * The queue is bounded (audit.writer.queue.size), a full queue blocks the worker until there is room.
+ */
+public class AsyncAuditWriter {
+    private static final Logger log = LoggerFactory.getLogger(AsyncAuditWriter.class);
+
+    private static volatile BlockingQueue<Object> queue;
+    private static volatile Thread writer;
+
+    public static void submitCaseResult(String runId, int caseId, String element, String runStatus) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("runId", runId);
+        row.put("caseId", caseId);
+        row.put("element", element);
+        row.put("runStatus", runStatus);
+        enqueue(new CaseResult(row));
+    }
+
+    // type is one of passes, failures, skips
+    public static void submitProgress(String runId, String type) {
+        enqueue(new ProgressDelta(runId, type));
+    }
+
+    /**
+     * Blocks until everything queued before this call is written, or audit.writer.flush.seconds passed.
+     */
+    public static void flush() {
+        // the barrier also restarts a writer that exited with items left behind
+        if (queue == null) {
+            return;
+        }
+        CountDownLatch barrier = new CountDownLatch(1);
+        enqueue(barrier);
+        long flushSeconds = Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("audit.writer.flush.seconds", "120").toString());
+        try {
+            if (!barrier.await(flushSeconds, TimeUnit.SECONDS)) {
+                log.error("Audit writer did not flush within {} seconds, {} items still queued", flushSeconds, queue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting for audit writer flush");
+        }
+    }
+
+    private static void enqueue(Object item) {
+        startWriterIfNeeded();
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while queueing audit item {}, write it directly", item);
+            writeBatch(List.of(item));
+        }
+    }
+
+    private static void startWriterIfNeeded() {
+        if (writer != null) {
+            return;
+        }
+        synchronized (AsyncAuditWriter.class) {
+            if (writer != null) {
+                return;
+            }
+            // a restarted writer keeps the queue, workers may still be blocked putting into it
+            if (queue == null) {
+                int queueSize = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("audit.writer.queue.size", "1000").toString());
+                queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+            }
+            Thread thread = new Thread(AsyncAuditWriter::runWriter, "audit-writer");
+            thread.setDaemon(true);
+            thread.start();
+            writer = thread;
+        }
+    }
+
+    private static void runWriter() {
+        int batchSize = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("audit.writer.batch.size", "200").toString());
+        List<Object> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, Math.max(0, batchSize - 1));
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // the next submit starts a new writer, what is queued now is written here so blocked workers get room
+                synchronized (AsyncAuditWriter.class) {
+                    writer = null;
+                }
+                queue.drainTo(batch);
+                log.warn("Audit writer interrupted, write the {} queued items directly", batch.size());
+                writeBatch(batch);
+                return;
+            } catch (Exception e) {
+                log.error("Audit writer failed to write {} items: {}", batch.size(), e.getMessage());
+            } finally {
+                // release barriers even when the write failed, so onFinish does not hang
+                batch.stream().filter(CountDownLatch.class::isInstance).forEach(item -> ((CountDownLatch) item).countDown());
+                batch.clear();
+            }
+        }
+    }
+
+    private static void writeBatch(List<Object> batch) {
+        List<Map<String, Object>> caseRows = new ArrayList<>();
+        Map<String, Map<String, Integer>> progressDeltas = new LinkedHashMap<>();
+        for (Object item : batch) {
+            if (item instanceof CaseResult) {
+                caseRows.add(((CaseResult) item).row);
+            } else if (item instanceof ProgressDelta) {
+                ProgressDelta delta = (ProgressDelta) item;
+                progressDeltas.computeIfAbsent(delta.runId, key -> new HashMap<>()).merge(delta.type, 1, Integer::sum);
+            }
+        }
+
+        if (!caseRows.isEmpty()) {
+            StringBuilder errorMessage = new StringBuilder();
+            DBUtil.executeLIFBatch(LIFDBStatement.UpdateAutoCaseAudit.name(), caseRows.iterator(), errorMessage);
+            if (errorMessage.length() > 0) {
+                // the batch is rolled back as a whole, write its rows one by one so one bad row only loses itself
+                log.warn("Failed to update {} AutoCaseAudit rows as batch, retry row by row: {}", caseRows.size(), errorMessage);
+                writeCaseRowsOneByOne(caseRows);
+            }
+        }
+
+        progressDeltas.forEach((runId, counts) -> {
+            Map<String, Object> params = new HashMap<>();
+            params.put("runId", runId);
+            params.put("passes", counts.getOrDefault("passes", 0));
+            params.put("failures", counts.getOrDefault("failures", 0));
+            params.put("skips", counts.getOrDefault("skips", 0));
+            StringBuilder errorMessage = new StringBuilder();
+            DBUtil.executeLIF(LIFDBStatement.AddAutoProgressCounts.name(), false, errorMessage, params);
+            if (errorMessage.length() > 0) {
+                log.error("Failed to update AutoProgress {} with {} and error {}", runId, counts, errorMessage);
+            }
+        });
+    }
+
+    private static void writeCaseRowsOneByOne(List<Map<String, Object>> caseRows) {
+        int failed = 0;
+        for (Map<String, Object> row : caseRows) {
+            StringBuilder errorMessage = new StringBuilder();
+            DBUtil.executeLIF(LIFDBStatement.UpdateAutoCaseAudit.name(), false, errorMessage, row);
+            if (errorMessage.length() > 0) {
+                failed++;
+                log.error("Failed to update AutoCaseAudit runId={}, caseId={}, runStatus={} with error {}",
+                        row.get("runId"), row.get("caseId"), row.get("runStatus"), errorMessage);
+            }
+        }
+        if (failed > 0) {
+            log.error("{} of {} AutoCaseAudit rows could not be written", failed, caseRows.size());
+        }
+    }
+
+    private static class CaseResult {
+        private final Map<String, Object> row;
+
+        private CaseResult(Map<String, Object> row) {
+            this.row = row;
+        }
+    }
+
+    private static class ProgressDelta {
+        private final String runId;
+        private final String type;
+
+        private ProgressDelta(String runId, String type) {
+            this.runId = runId;
+            this.type = type;
+        }
+    }
+}
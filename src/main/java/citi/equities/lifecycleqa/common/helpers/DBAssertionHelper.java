@@ -3,7 +3,6 @@ package citi.equities.lifecycleqa.common.helpers;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.NullNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
 import citi.equities.lifecycleqa.common.enums.JsonElementValidatorCondition;
@@ -20,23 +19,23 @@ public class DBAssertionHelper {
             StringBuilder output, StringBuilder errorMessage) {
 
         for (JsonNode element : assertArray) {
-            JsonNode executeElement = PlaceholderReplaceHelper.replaceDataObjectForTestDataAndAutoSystemVariables(
-                    baseInfo, element, errorMessage);
-
+            // only the fields the assertion reads are resolved
+            LazyPlaceholderObject executeObj = LazyPlaceholderObject.of(baseInfo, element, errorMessage);
             if (errorMessage.length() > 0) {
                 return false;
             }
-
-            if (!executeElement.isObject()) {
+            if (executeObj == null) {
                 continue;
             }
 
-            ObjectNode executeObj = (ObjectNode) executeElement;
             JsonNode key = executeObj.has("key") ? executeObj.get("key") : new TextNode("Not found key");
             String condition = executeObj.has("condition") ?
                     executeObj.get("condition").asText(JsonElementValidatorCondition.UnknownCondition.name()) :
                     JsonElementValidatorCondition.UnknownCondition.name();
             JsonNode value = executeObj.has("value") ? executeObj.get("value") : NullNode.getInstance();
+            if (errorMessage.length() > 0) {
+                return false;
+            }
             StringBuilder errLog = new StringBuilder();
 
             boolean validateValue = JsonElementValidationUtil.validate(key, value, condition, errLog);
@@ -4,12 +4,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import citi.equities.lifecycleqa.common.config.DataSourceRegistry;
 import citi.equities.lifecycleqa.common.config.GlobalData;
-import citi.equities.lifecycleqa.common.config.InitialConfig;
 import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
+import citi.equities.lifecycleqa.common.entities.ParameterizedSql;
+import citi.equities.lifecycleqa.common.entities.RetryPolicy;
+import citi.equities.lifecycleqa.common.entities.SqlObject;
 import citi.equities.lifecycleqa.common.entities.StopCondition;
 import citi.equities.lifecycleqa.common.utils.DBUtil;
-import citi.equities.lifecycleqa.common.utils.DataTypeUtil;
 import org.apache.ibatis.session.SqlSessionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,34 +24,26 @@ public class DBExecutionHelper {
             AutomationStepBasicInfo baseInfo, ArrayNode executeArray, StringBuilder errorMessage) {
 
         for (JsonNode element : executeArray) {
-            JsonNode executeElement = PlaceholderReplaceHelper.replaceDataObjectForTestDataAndAutoSystemVariables(
-                    baseInfo, element, errorMessage);
-
-            if (!executeElement.isObject()) {
+            LazyPlaceholderObject executeObj = LazyPlaceholderObject.of(baseInfo, element, errorMessage);
+            if (executeObj == null) {
                 continue;
             }
 
-            ObjectNode executeObj = (ObjectNode) executeElement;
-
-            JsonNode sqlNode = PlaceholderReplaceHelper.replaceDataValueFromAutoTestDataAndAutoSystemVariables(
+            ParameterizedSql parameterizedSql = PlaceholderReplaceHelper.compileSqlWithBindParameters(
                     baseInfo,
                     executeObj.has("sql") ? executeObj.get("sql").asText("") : "",
                     errorMessage);
-            String sql = sqlNode.isTextual() ? sqlNode.asText() : "";
+            String sql = parameterizedSql.getSql();
 
             String dbType = executeObj.has("dbType") ? executeObj.get("dbType").asText("") : "";
             String storedKey = executeObj.has("storedKey") ? executeObj.get("storedKey").asText(null) : null;
 
-            int retryNumber = 1;
-            int intervalSeconds = 1;
+            RetryPolicy retryPolicy = RetryPolicy.fromRetryNode(executeObj.get("retry"), 1, 1L);
             StopCondition stopCondition = null;
 
             if (executeObj.has("retry")) {
                 JsonNode retryNode = executeObj.get("retry");
                 if (retryNode.isObject()) {
-                    retryNumber = retryNode.has("attempt") ? retryNode.get("attempt").asInt(1) : 1;
-                    intervalSeconds = retryNode.has("interval") ? retryNode.get("interval").asInt(1) : 1;
-
                     if (retryNode.has("stopCondition") && retryNode.get("stopCondition").isObject()) {
                         JsonNode sc = retryNode.get("stopCondition");
                         stopCondition = new StopCondition(
@@ -64,20 +58,17 @@ public class DBExecutionHelper {
             }
 
             String sqlSessionManagerName = DBUtil.buildSqlSessionManagerName(dbType, baseInfo.getRegion(), baseInfo.getEnv());
-            boolean isSelect;
-            try {
-                isSelect = DBUtil.analyzeSqlWithIsSelectRowColumnNumber(sql).isSelect();
-            } catch (Exception e) {
-                isSelect = false;
-            }
+            SqlObject sqlObject = DBUtil.analyzeSqlWithIsSelectRowColumnNumber(sql);
+            boolean isSelect = sqlObject.isSelect();
 
-            SqlSessionManager sqlSessionManager = InitialConfig.DB_CONFIG.get(sqlSessionManagerName);
+            SqlSessionManager sqlSessionManager = DataSourceRegistry.fetchSqlSessionManager(
+                    dbType, baseInfo.getRegion(), baseInfo.getEnv(), errorMessage);
             if (sqlSessionManager == null) {
-                errorMessage.append("SqlSessionManager not found for: ").append(sqlSessionManagerName);
+                errorMessage.append("\nSqlSessionManager not found for: ").append(sqlSessionManagerName);
                 return;
             }
 
-            JsonNode dbActionResult = DBUtil.executeSQL(sqlSessionManager, sql, errorMessage, retryNumber, intervalSeconds, stopCondition);
+            JsonNode dbActionResult = DBUtil.executeSQL(sqlSessionManager, parameterizedSql, sqlObject, errorMessage, retryPolicy, stopCondition);
 
             if (isSelect) {
                 if (errorMessage.length() > 0) {
@@ -109,13 +100,7 @@ public class DBExecutionHelper {
             log.info("Debug mode, skip to store '{}'", testDataKey);
             GlobalData.addKeyInTestData(baseInfo.getRunId(), testDataKey, testDataValue);
         } else {
-            JsonNode finalTestDataValue = DataTypeUtil.processJsonElementForSingleQuotation(testDataValue);
-            String updateSql = "update auto_case_audit set \"testData\" = jsonb_set(\"testData\", '{" +
-                    testDataKey + "}', '" + finalTestDataValue.toString() +
-                    "') where \"runId\" = '" + baseInfo.getRunId() +
-                    "' and \"caseId\" = " + baseInfo.getCaseId();
-
-            DBUtil.executeLIF(updateSql, true, errorMessage);
+            TestDataContextHelper.storeKey(baseInfo, testDataKey, testDataValue, errorMessage);
 
             if (errorMessage.length() > 0) {
                 String errMsg = "Failed to store " + testDataKey + " with error: " + errorMessage;
@@ -0,0 +1,337 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.config.InitialConfig;
+import citi.equities.lifecycleqa.common.entities.RetryPolicy;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Waits until the stopCondition of a DB retry block is met. Concurrent waits on the same datasource and sql
+ * share one poller, which runs the query once per round and checks every waiter's condition on that result.
+ * With retry.notifyChannel on a Postgres datasource the poller LISTENs on the channel and re-queries as soon
+ * as a NOTIFY arrives, the retry interval is then only the fallback when no notification comes
+ * (other databases, missing trigger).
+ */
+public class DBWaitHelper {
+    private static final Logger log = LoggerFactory.getLogger(DBWaitHelper.class);
+
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]{0,62}");
+    private static final Map<String, SharedWait> WAITS = new ConcurrentHashMap<>();
+    private static final Map<SqlSessionManager, NotifyListener> LISTENERS = new ConcurrentHashMap<>();
+    private static final ExecutorService POLLERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "db-wait-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param waitKey identifies the query on this datasource, waits with the same key are coalesced
+     * @param query   runs the select once, returns null when it failed and appends the error to the given builder
+     * @return rows of the last round that was evaluated for this waiter, null when that round failed
+     */
+    public static List<Object> waitForResult(SqlSessionManager sqlSessionManager, String waitKey,
+                                             Function<StringBuilder, List<Object>> query,
+                                             Predicate<List<Object>> isDone, RetryPolicy policy,
+                                             StringBuilder errorMessage) {
+        String channel = policy.getNotifyChannel();
+        if (channel != null && !channel.isBlank()) {
+            if (!CHANNEL_NAME.matcher(channel).matches()) {
+                log.warn("Invalid notifyChannel '{}', fall back to polling", channel);
+                channel = null;
+            } else if (!listen(sqlSessionManager, channel)) {
+                channel = null;
+            }
+        } else {
+            channel = null;
+        }
+
+        Waiter waiter = new Waiter(isDone, policy);
+        String notifyChannel = channel;
+        SharedWait[] shared = new SharedWait[1];
+        WAITS.compute(System.identityHashCode(sqlSessionManager) + "|" + notifyChannel + "|" + waitKey, (key, existing) -> {
+            if (existing != null && existing.addWaiter(waiter)) {
+                shared[0] = existing;
+                return existing;
+            }
+            shared[0] = new SharedWait(key, sqlSessionManager, notifyChannel, query);
+            shared[0].addWaiter(waiter);
+            POLLERS.execute(shared[0]::run);
+            return shared[0];
+        });
+
+        List<Object> result;
+        try {
+            result = waiter.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shared[0].removeWaiter(waiter);
+            errorMessage.append("DB wait ").append(waitKey).append(" is interrupted after ").append(waiter.attempts).append(" attempts");
+            return null;
+        } catch (ExecutionException e) {
+            errorMessage.append(e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+            return null;
+        }
+        if (result == null && waiter.lastError != null) {
+            errorMessage.append(waiter.lastError);
+        }
+        return result;
+    }
+
+    // LISTEN is done before the first query, so a NOTIFY sent in between is not lost
+    private static boolean listen(SqlSessionManager sqlSessionManager, String channel) {
+        NotifyListener listener = LISTENERS.computeIfAbsent(sqlSessionManager, DBWaitHelper::createListener);
+        return listener != null && listener.listen(channel);
+    }
+
+    private static NotifyListener createListener(SqlSessionManager sqlSessionManager) {
+        try {
+            BasicDataSource dataSource = sqlSessionManager.getConfiguration().getEnvironment().getDataSource()
+                    .unwrap(BasicDataSource.class);
+            if (dataSource.getUrl() == null || !dataSource.getUrl().startsWith("jdbc:postgresql")) {
+                log.info("Datasource {} does not support LISTEN/NOTIFY, fall back to polling", dataSource.getUrl());
+                return null;
+            }
+            // own connection outside the pool, it is held for as long as waits are listening
+            Connection connection = DriverManager.getConnection(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
+            connection.setAutoCommit(true);
+            NotifyListener listener = new NotifyListener(sqlSessionManager, connection);
+            Thread thread = new Thread(listener::run, "db-wait-listener");
+            thread.setDaemon(true);
+            thread.start();
+            return listener;
+        } catch (Exception e) {
+            log.warn("Failed to open LISTEN connection, fall back to polling: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static class Waiter {
+        private final Predicate<List<Object>> isDone;
+        private final RetryPolicy policy;
+        private final long start = System.currentTimeMillis();
+        private final CompletableFuture<List<Object>> future = new CompletableFuture<>();
+        private int attempts;
+        // the first round is due right away, later ones after the policy delay of the previous attempt
+        private long nextDue;
+        private String lastError;
+
+        private Waiter(Predicate<List<Object>> isDone, RetryPolicy policy) {
+            this.isDone = isDone;
+            this.policy = policy;
+        }
+    }
+
+    private static class SharedWait {
+        private final String key;
+        private final SqlSessionManager sqlSessionManager;
+        private final String channel;
+        private final Function<StringBuilder, List<Object>> query;
+        private final List<Waiter> waiters = new ArrayList<>();
+        private CompletableFuture<Object> wake = new CompletableFuture<>();
+        private boolean closed;
+
+        private SharedWait(String key, SqlSessionManager sqlSessionManager, String channel,
+                           Function<StringBuilder, List<Object>> query) {
+            this.key = key;
+            this.sqlSessionManager = sqlSessionManager;
+            this.channel = channel;
+            this.query = query;
+        }
+
+        // false once the poller finished, the caller then starts a new one
+        private synchronized boolean addWaiter(Waiter waiter) {
+            if (closed) {
+                return false;
+            }
+            waiters.add(waiter);
+            // a new waiter should not wait for the current interval before its first result
+            wake.complete(null);
+            return true;
+        }
+
+        // the poller finishes on its next round when no waiter is left
+        private synchronized void removeWaiter(Waiter waiter) {
+            waiters.remove(waiter);
+        }
+
+        private void run() {
+            int round = 0;
+            while (true) {
+                NotifyListener listener = channel == null ? null : LISTENERS.get(sqlSessionManager);
+                CompletableFuture<Object> notified = listener == null ? new CompletableFuture<>() : listener.register(channel);
+
+                StringBuilder roundError = new StringBuilder();
+                List<Object> result;
+                try {
+                    result = query.apply(roundError);
+                } catch (Exception e) {
+                    roundError.append(e.getMessage());
+                    result = null;
+                }
+                round++;
+
+                long delayMillis = Long.MAX_VALUE;
+                int waiting;
+                CompletableFuture<Object> currentWake;
+                synchronized (this) {
+                    long now = System.currentTimeMillis();
+                    Iterator<Waiter> iterator = waiters.iterator();
+                    while (iterator.hasNext()) {
+                        Waiter waiter = iterator.next();
+                        waiter.lastError = roundError.length() > 0 ? roundError.toString() : null;
+                        boolean done = result != null && waiter.isDone.test(result);
+                        // rounds run early for a joining waiter or a NOTIFY only count for the waiters that are due
+                        if (!done && now < waiter.nextDue) {
+                            delayMillis = Math.min(delayMillis, waiter.nextDue - now);
+                            continue;
+                        }
+                        waiter.attempts++;
+                        long nextDelay = done ? -1L : RetrySchedulerHelper.nextDelay(key, waiter.policy, waiter.attempts, waiter.start);
+                        if (nextDelay < 0) {
+                            iterator.remove();
+                            waiter.future.complete(result);
+                        } else {
+                            waiter.nextDue = now + nextDelay;
+                            delayMillis = Math.min(delayMillis, nextDelay);
+                        }
+                    }
+                    waiting = waiters.size();
+                    closed = waiting == 0;
+                    wake = new CompletableFuture<>();
+                    currentWake = wake;
+                }
+
+                if (waiting == 0) {
+                    if (listener != null) {
+                        listener.unregister(channel, notified);
+                    }
+                    WAITS.remove(key, this);
+                    log.info("Finish shared DB wait {} after {} rounds", key, round);
+                    return;
+                }
+
+                log.debug("Shared DB wait {} round {} not met for {} waiters, next in {} ms{}", key, round, waiting,
+                        delayMillis, channel == null ? "" : " or on NOTIFY " + channel);
+                CompletableFuture.anyOf(notified, currentWake, RetrySchedulerHelper.delay(delayMillis)).join();
+                if (listener != null) {
+                    listener.unregister(channel, notified);
+                }
+            }
+        }
+    }
+
+    private static class NotifyListener {
+        private final SqlSessionManager sqlSessionManager;
+        private final Connection connection;
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+        private final Map<String, Set<CompletableFuture<Object>>> pending = new ConcurrentHashMap<>();
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile boolean broken;
+
+        private NotifyListener(SqlSessionManager sqlSessionManager, Connection connection) {
+            this.sqlSessionManager = sqlSessionManager;
+            this.connection = connection;
+        }
+
+        private boolean listen(String channel) {
+            lastUsed = System.currentTimeMillis();
+            if (broken) {
+                return false;
+            }
+            if (channels.contains(channel)) {
+                return true;
+            }
+            synchronized (this) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN \"" + channel + "\"");
+                    channels.add(channel);
+                    log.info("LISTEN on channel {}", channel);
+                    return true;
+                } catch (SQLException e) {
+                    log.warn("Failed to LISTEN on channel {}, fall back to polling: {}", channel, e.getMessage());
+                    return false;
+                }
+            }
+        }
+
+        private CompletableFuture<Object> register(String channel) {
+            lastUsed = System.currentTimeMillis();
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            if (!broken) {
+                pending.computeIfAbsent(channel, key -> ConcurrentHashMap.newKeySet()).add(future);
+            }
+            return future;
+        }
+
+        private void unregister(String channel, CompletableFuture<Object> future) {
+            Set<CompletableFuture<Object>> futures = pending.get(channel);
+            if (futures != null) {
+                futures.remove(future);
+            }
+        }
+
+        private void run() {
+            long idleMillis = Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("db.wait.listener.idle.seconds", "300").toString()) * 1000L;
+            while (true) {
+                PGNotification[] notifications;
+                synchronized (this) {
+                    try {
+                        notifications = connection.unwrap(PGConnection.class).getNotifications(500);
+                    } catch (SQLException e) {
+                        log.warn("LISTEN connection failed, waits fall back to polling: {}", e.getMessage());
+                        close();
+                        return;
+                    }
+                }
+                if (notifications != null) {
+                    for (PGNotification notification : notifications) {
+                        Set<CompletableFuture<Object>> futures = pending.get(notification.getName());
+                        if (futures != null) {
+                            futures.forEach(future -> future.complete(notification.getParameter()));
+                        }
+                    }
+                }
+                if (pending.values().stream().allMatch(Set::isEmpty) && System.currentTimeMillis() - lastUsed > idleMillis) {
+                    log.info("Close idle LISTEN connection for channels {}", channels);
+                    close();
+                    return;
+                }
+            }
+        }
+
+        // waiting rounds are woken and continue by polling
+        private void close() {
+            broken = true;
+            LISTENERS.remove(sqlSessionManager, this);
+            pending.values().forEach(futures -> futures.forEach(future -> future.complete(null)));
+            pending.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Failed to close LISTEN connection: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package citi.equities.lifecycleqa.common.helpers;
 
+import citi.equities.lifecycleqa.common.config.InitialConfig;
 import citi.equities.lifecycleqa.common.enums.DSEnum;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
 public class DynamicDataSourceContextHolder {
     private static final ThreadLocal<DSEnum> threadLocal = new ThreadLocal<>();
+    // runId -> time of its last LIF write, reads of that run stay on the primary until the replica caught up
+    private static final Map<String, Long> LAST_WRITES = new ConcurrentHashMap<>();
 
     public static void setDataSourceContext(DSEnum dsEnum) {
         threadLocal.set(dsEnum);
@@ -16,4 +23,48 @@ public class DynamicDataSourceContextHolder {
     public static void clearDataSourceContext() {
         threadLocal.remove();
     }
+
+    /**
+     * Runs LIF reads on the replica, or on the primary when runId wrote within lif.replica.max.lag.ms.
+     */
+    public static <T> T executeReadOnly(String runId, Supplier<T> action) {
+        return executeWithContext(isRecentlyWritten(runId) ? DSEnum.PRIMARY : DSEnum.READ_ONLY, action);
+    }
+
+    public static <T> T executeOnPrimary(Supplier<T> action) {
+        return executeWithContext(DSEnum.PRIMARY, action);
+    }
+
+    public static void markWrite(String runId) {
+        if (runId != null && !runId.isEmpty()) {
+            LAST_WRITES.put(runId, System.currentTimeMillis());
+        }
+    }
+
+    private static boolean isRecentlyWritten(String runId) {
+        Long lastWrite = runId == null ? null : LAST_WRITES.get(runId);
+        if (lastWrite == null) {
+            return false;
+        }
+        long maxLagMillis = Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("lif.replica.max.lag.ms", "5000").toString());
+        if (System.currentTimeMillis() - lastWrite < maxLagMillis) {
+            return true;
+        }
+        LAST_WRITES.remove(runId, lastWrite);
+        return false;
+    }
+
+    private static <T> T executeWithContext(DSEnum dsEnum, Supplier<T> action) {
+        DSEnum previous = threadLocal.get();
+        threadLocal.set(dsEnum);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                threadLocal.remove();
+            } else {
+                threadLocal.set(previous);
+            }
+        }
+    }
 }
@@ -0,0 +1,123 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.config.InitialConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Rolling latency window per (serviceName, method, path template), used to derive per-endpoint timeouts
+ * as a high percentile times a factor instead of the global request.timeout.min.
+ * Windows live in memory, so they cover the previous runs served by this instance; the least recently
+ * used endpoints are dropped beyond latency.max.endpoints. Calls that timed out count as the timeout.
+ */
+public class EndpointLatencyHelper {
+    private static final Logger log = LoggerFactory.getLogger(EndpointLatencyHelper.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // timeouts are rounded up to these steps so each base url only needs a few http client pools
+    private static final long[] TIMEOUT_BUCKETS_SECONDS = {1, 2, 3, 5, 10, 15, 30, 60, 120, 300, 600};
+
+    private static final Cache<String, LatencyWindow> WINDOWS = Caffeine.newBuilder()
+            .maximumSize(Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("latency.max.endpoints", "5000").toString()))
+            .build();
+
+    // pathTemplate is the step path before placeholders are replaced, so ids in the path do not split the window
+    public static String buildEndpointKey(String serviceName, String method, String pathTemplate) {
+        return (serviceName + "|" + method + "|" + pathTemplate).toLowerCase();
+    }
+
+    public static void recordLatency(String endpointKey, long latencyMillis) {
+        int windowSize = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("latency.window.size", "1000").toString());
+        WINDOWS.get(endpointKey, key -> new LatencyWindow(windowSize)).add(latencyMillis);
+    }
+
+    /**
+     * Read timeout for the endpoint: retry.timeout (seconds) when set in the step, otherwise
+     * p99.9 * latency.timeout.factor once latency.min.samples were seen, bounded by the global timeout.
+     */
+    public static long resolveReadTimeoutMillis(String endpointKey, JsonNode retryObject, long defaultTimeoutMillis) {
+        if (retryObject != null && retryObject.has("timeout")) {
+            return bucketTimeout(retryObject.get("timeout").asLong() * 1000L);
+        }
+
+        LatencyWindow window = WINDOWS.getIfPresent(endpointKey);
+        int minSamples = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("latency.min.samples", "50").toString());
+        if (window == null || window.size() < minSamples) {
+            return defaultTimeoutMillis;
+        }
+
+        double factor = Double.parseDouble(InitialConfig.INFO_CONFIG.getOrDefault("latency.timeout.factor", "3").toString());
+        long floorMillis = Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("latency.timeout.min.ms", "1000").toString());
+        long adaptive = (long) (window.percentile(99.9) * factor);
+        long timeout = Math.min(defaultTimeoutMillis, bucketTimeout(Math.max(floorMillis, adaptive)));
+        log.debug("Adaptive timeout for {} is {} ms", endpointKey, timeout);
+        return timeout;
+    }
+
+    public static long resolveConnectTimeoutMillis(JsonNode retryObject, long readTimeoutMillis) {
+        if (retryObject != null && retryObject.has("connectTimeout")) {
+            return bucketTimeout(retryObject.get("connectTimeout").asLong() * 1000L);
+        }
+        long connectCap = Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("latency.connect.timeout.ms", "10000").toString());
+        return Math.min(readTimeoutMillis, connectCap);
+    }
+
+    public static ObjectNode fetchLatencyMetrics() {
+        ObjectNode result = objectMapper.createObjectNode();
+        WINDOWS.asMap().forEach((key, window) -> {
+            ObjectNode item = objectMapper.createObjectNode();
+            item.put("samples", window.size());
+            item.put("p50", window.percentile(50));
+            item.put("p99", window.percentile(99));
+            item.put("p99.9", window.percentile(99.9));
+            result.set(key, item);
+        });
+        return result;
+    }
+
+    private static long bucketTimeout(long timeoutMillis) {
+        for (long bucket : TIMEOUT_BUCKETS_SECONDS) {
+            if (timeoutMillis <= bucket * 1000L) {
+                return bucket * 1000L;
+            }
+        }
+        return (timeoutMillis + 59999L) / 60000L * 60000L;
+    }
+
+    private static class LatencyWindow {
+        private final long[] samples;
+        private int count;
+        private int next;
+
+        private LatencyWindow(int capacity) {
+            this.samples = new long[Math.max(1, capacity)];
+        }
+
+        private synchronized void add(long latencyMillis) {
+            samples[next] = latencyMillis;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        private synchronized int size() {
+            return count;
+        }
+
+        private synchronized long percentile(double percentile) {
+            if (count == 0) {
+                return 0L;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.config.InitialConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.restassured.config.HttpClientConfig;
+import io.restassured.config.RestAssuredConfig;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps pooled, keep-alive http clients per base url (and timeout bucket) so that steps and loop
+ * iterations hitting the same service reuse their TCP/TLS connections instead of opening new ones.
+ * All clients lease from one connection manager, so http.pool.max.total bounds the whole instance
+ * and http.pool.max.per.route each host, however many timeout buckets a base url ends up with.
+ */
+public class HttpClientPoolHelper {
+    private static final Logger log = LoggerFactory.getLogger(HttpClientPoolHelper.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final Map<String, HttpClientPool> POOLS = new ConcurrentHashMap<>();
+    private static volatile PoolingClientConnectionManager connectionManager;
+    private static volatile ScheduledExecutorService evictor;
+    // {dns, open connection incl. dns and tls handshake} in ms, new connections are opened on the calling thread
+    private static final ThreadLocal<long[]> CONNECT_TIMING = ThreadLocal.withInitial(() -> new long[2]);
+
+    // timeouts are client level params, so each (connect, read) timeout pair gets its own client on the shared connections
+    public static RestAssuredConfig fetchRestAssuredConfig(String baseUrl, long connectTimeoutMillis, long readTimeoutMillis) {
+        String poolKey = buildPoolKey(baseUrl) + "|" + connectTimeoutMillis + "|" + readTimeoutMillis;
+        HttpClientPool pool = POOLS.computeIfAbsent(poolKey, key -> createPool(baseUrl, connectTimeoutMillis, readTimeoutMillis));
+        pool.requestCount.incrementAndGet();
+        return pool.config;
+    }
+
+    public static void resetConnectTiming() {
+        long[] timing = CONNECT_TIMING.get();
+        timing[0] = 0L;
+        timing[1] = 0L;
+    }
+
+    // both are 0 when the request reused a pooled connection
+    public static long fetchDnsMillis() {
+        return CONNECT_TIMING.get()[0];
+    }
+
+    public static long fetchConnectMillis() {
+        long[] timing = CONNECT_TIMING.get();
+        return Math.max(0L, timing[1] - timing[0]);
+    }
+
+    public static ObjectNode fetchPoolMetrics() {
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("poolCount", POOLS.size());
+        PoolingClientConnectionManager current = connectionManager;
+        if (current != null) {
+            PoolStats stats = current.getTotalStats();
+            result.put("leased", stats.getLeased());
+            result.put("available", stats.getAvailable());
+            result.put("pending", stats.getPending());
+            result.put("max", stats.getMax());
+            result.put("maxPerRoute", current.getDefaultMaxPerRoute());
+        }
+        ObjectNode pools = objectMapper.createObjectNode();
+        POOLS.forEach((key, pool) -> {
+            ObjectNode item = objectMapper.createObjectNode();
+            item.put("baseUrl", pool.baseUrl);
+            item.put("requests", pool.requestCount.get());
+            pools.set(key, item);
+        });
+        result.set("pools", pools);
+        return result;
+    }
+
+    public static synchronized void shutdownAll() {
+        POOLS.clear();
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+    }
+
+    private static HttpClientPool createPool(String baseUrl, long connectTimeoutMillis, long readTimeoutMillis) {
+        // the socket timeout is applied to the leased connection on each request, so clients can share connections
+        DefaultHttpClient httpClient = new DefaultHttpClient(fetchConnectionManager());
+        httpClient.addResponseInterceptor(ResponseCaptureHelper.SPILL_INTERCEPTOR);
+
+        RestAssuredConfig config = RestAssuredConfig.config()
+                .httpClient(HttpClientConfig.httpClientConfig()
+                        .setParam("http.socket.timeout", (int) readTimeoutMillis)
+                        .setParam("http.connection.timeout", (int) connectTimeoutMillis)
+                        .httpClientFactory(() -> httpClient)
+                        .reuseHttpClientInstance());
+
+        log.info("Create http client for {} with connect timeout {} ms, read timeout {} ms", baseUrl, connectTimeoutMillis, readTimeoutMillis);
+        return new HttpClientPool(baseUrl, config);
+    }
+
+    private static synchronized PoolingClientConnectionManager fetchConnectionManager() {
+        if (connectionManager == null) {
+            int maxTotal = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("http.pool.max.total", "200").toString());
+            int maxPerRoute = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("http.pool.max.per.route", "50").toString());
+            PoolingClientConnectionManager manager = new PoolingClientConnectionManager() {
+                @Override
+                protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schemeRegistry) {
+                    return new TimedConnectionOperator(schemeRegistry);
+                }
+            };
+            manager.setMaxTotal(maxTotal);
+            manager.setDefaultMaxPerRoute(maxPerRoute);
+            connectionManager = manager;
+            startEvictorIfNeeded();
+            log.info("Create http connection pool with maxTotal {}, maxPerRoute {}", maxTotal, maxPerRoute);
+        }
+        return connectionManager;
+    }
+
+    private static void startEvictorIfNeeded() {
+        if (evictor != null) {
+            return;
+        }
+        synchronized (HttpClientPoolHelper.class) {
+            if (evictor != null) {
+                return;
+            }
+            long idleSeconds = Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("http.pool.idle.seconds", "60").toString());
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "http-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(() -> {
+                PoolingClientConnectionManager current = connectionManager;
+                if (current == null) {
+                    return;
+                }
+                try {
+                    current.closeExpiredConnections();
+                    current.closeIdleConnections(idleSeconds, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    log.warn("Failed to evict idle connections: {}", e.getMessage());
+                }
+            }, idleSeconds, idleSeconds, TimeUnit.SECONDS);
+            evictor = executor;
+        }
+    }
+
+    private static String buildPoolKey(String baseUrl) {
+        String key = baseUrl == null ? "" : baseUrl.trim().toLowerCase();
+        while (key.endsWith("/")) {
+            key = key.substring(0, key.length() - 1);
+        }
+        return key;
+    }
+
+    private static class TimedConnectionOperator extends DefaultClientConnectionOperator {
+        private TimedConnectionOperator(SchemeRegistry schemeRegistry) {
+            super(schemeRegistry);
+        }
+
+        @Override
+        public void openConnection(OperatedClientConnection conn, HttpHost target, InetAddress local,
+                                   HttpContext context, HttpParams params) throws IOException {
+            long start = System.currentTimeMillis();
+            try {
+                super.openConnection(conn, target, local, context, params);
+            } finally {
+                CONNECT_TIMING.get()[1] += System.currentTimeMillis() - start;
+            }
+        }
+
+        @Override
+        protected InetAddress[] resolveHostname(String host) throws UnknownHostException {
+            long start = System.currentTimeMillis();
+            try {
+                return super.resolveHostname(host);
+            } finally {
+                CONNECT_TIMING.get()[0] += System.currentTimeMillis() - start;
+            }
+        }
+    }
+
+    private static class HttpClientPool {
+        private final String baseUrl;
+        private final RestAssuredConfig config;
+        private final AtomicLong requestCount = new AtomicLong();
+
+        private HttpClientPool(String baseUrl, RestAssuredConfig config) {
+            this.baseUrl = baseUrl;
+            this.config = config;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Step json compiled once into literal parts and {{key}} references for PlaceholderReplaceHelper.
+ * Subtrees without placeholders are not part of the template, evaluation links the original nodes
+ * into the result, so only the path from the root down to each placeholder is rebuilt.
+ */
+abstract class JsonTemplate {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{\\{([^\\{\\}]*?)\\}\\}");
+    // resolved values are resolved again while they hold placeholders, up to this depth
+    private static final int MAX_DEPTH = 3;
+    private static final JsonTemplate NO_PLACEHOLDER = new JsonTemplate() {
+        @Override
+        JsonNode evaluate(Function<String, JsonNode> resolver, int depth) {
+            throw new IllegalStateException("Template without placeholder is never evaluated");
+        }
+
+        @Override
+        void collectKeys(Set<String> keys) {
+        }
+    };
+    // step json is not modified after loading, so templates are cached per node instance
+    private static final Cache<JsonNode, JsonTemplate> TEMPLATES = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(10000)
+            .build();
+
+    abstract JsonNode evaluate(Function<String, JsonNode> resolver, int depth);
+
+    // placeholder keys of the template itself, keys inside resolved values are only known after evaluation
+    abstract void collectKeys(Set<String> keys);
+
+    // null when the node has no placeholder and can be used as it is
+    static JsonTemplate compile(JsonNode node) {
+        if (node.isValueNode() && !node.isTextual()) {
+            return null;
+        }
+        JsonTemplate template = TEMPLATES.get(node, key -> {
+            JsonTemplate compiled = compileUncached(key);
+            return compiled == null ? NO_PLACEHOLDER : compiled;
+        });
+        return template == NO_PLACEHOLDER ? null : template;
+    }
+
+    private static JsonTemplate compileUncached(JsonNode node) {
+        if (node.isObject()) {
+            List<FieldTemplate> fields = new ArrayList<>();
+            boolean hasPlaceholder = false;
+            Iterator<Map.Entry<String, JsonNode>> iterator = node.fields();
+            while (iterator.hasNext()) {
+                Map.Entry<String, JsonNode> entry = iterator.next();
+                TextTemplate keyTemplate = TextTemplate.parse(entry.getKey());
+                // sql is kept as template, placeholders are bound by compileSqlWithBindParameters
+                JsonTemplate valueTemplate = "sql".equals(entry.getKey()) && entry.getValue().isTextual()
+                        ? null : compileUncached(entry.getValue());
+                hasPlaceholder |= keyTemplate != null || valueTemplate != null;
+                fields.add(new FieldTemplate(entry.getKey(), keyTemplate, entry.getValue(), valueTemplate));
+            }
+            return hasPlaceholder ? new ObjectTemplate(fields) : null;
+        }
+        if (node.isArray()) {
+            List<JsonTemplate> items = new ArrayList<>(node.size());
+            boolean hasPlaceholder = false;
+            for (JsonNode item : node) {
+                JsonTemplate itemTemplate = compileUncached(item);
+                hasPlaceholder |= itemTemplate != null;
+                items.add(itemTemplate);
+            }
+            return hasPlaceholder ? new ArrayTemplate(node, items) : null;
+        }
+        if (node.isTextual()) {
+            return TextTemplate.parse(node.asText());
+        }
+        return null;
+    }
+
+    // a resolved value that still holds placeholders is resolved again, one level deeper
+    private static JsonNode evaluateResolved(JsonNode value, Function<String, JsonNode> resolver, int depth) {
+        if (value.isValueNode() && !value.isTextual()) {
+            return value;
+        }
+        JsonTemplate template = compileUncached(value);
+        return template == null ? value : template.evaluate(resolver, depth);
+    }
+
+    private static class FieldTemplate {
+        private final String key;
+        private final TextTemplate keyTemplate;
+        private final JsonNode value;
+        private final JsonTemplate valueTemplate;
+
+        private FieldTemplate(String key, TextTemplate keyTemplate, JsonNode value, JsonTemplate valueTemplate) {
+            this.key = key;
+            this.keyTemplate = keyTemplate;
+            this.value = value;
+            this.valueTemplate = valueTemplate;
+        }
+    }
+
+    private static class ObjectTemplate extends JsonTemplate {
+        private final List<FieldTemplate> fields;
+
+        private ObjectTemplate(List<FieldTemplate> fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        JsonNode evaluate(Function<String, JsonNode> resolver, int depth) {
+            ObjectNode result = objectMapper.createObjectNode();
+            for (FieldTemplate field : fields) {
+                String key = field.key;
+                if (field.keyTemplate != null) {
+                    JsonNode keyNode = field.keyTemplate.resolve(resolver);
+                    key = keyNode.isTextual() ? keyNode.asText() : field.key;
+                }
+                result.set(key, field.valueTemplate == null ? field.value : field.valueTemplate.evaluate(resolver, depth));
+            }
+            return result;
+        }
+
+        @Override
+        void collectKeys(Set<String> keys) {
+            for (FieldTemplate field : fields) {
+                if (field.keyTemplate != null) {
+                    field.keyTemplate.collectKeys(keys);
+                }
+                if (field.valueTemplate != null) {
+                    field.valueTemplate.collectKeys(keys);
+                }
+            }
+        }
+    }
+
+    private static class ArrayTemplate extends JsonTemplate {
+        private final JsonNode source;
+        private final List<JsonTemplate> items;
+
+        private ArrayTemplate(JsonNode source, List<JsonTemplate> items) {
+            this.source = source;
+            this.items = items;
+        }
+
+        @Override
+        JsonNode evaluate(Function<String, JsonNode> resolver, int depth) {
+            ArrayNode result = objectMapper.createArrayNode();
+            for (int i = 0; i < items.size(); i++) {
+                JsonTemplate item = items.get(i);
+                result.add(item == null ? source.get(i) : item.evaluate(resolver, depth));
+            }
+            return result;
+        }
+
+        @Override
+        void collectKeys(Set<String> keys) {
+            for (JsonTemplate item : items) {
+                if (item != null) {
+                    item.collectKeys(keys);
+                }
+            }
+        }
+    }
+
+    private static class TextTemplate extends JsonTemplate {
+        private final String source;
+        // the text is a single {{key}}, the resolved node is used as it is instead of its text
+        private final String wholeKey;
+        // literal text at even, placeholder keys at odd positions
+        private final List<String> segments;
+
+        private TextTemplate(String source, String wholeKey, List<String> segments) {
+            this.source = source;
+            this.wholeKey = wholeKey;
+            this.segments = segments;
+        }
+
+        private static TextTemplate parse(String text) {
+            if (text.indexOf("{{") < 0) {
+                return null;
+            }
+            Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
+            if (!matcher.find()) {
+                return null;
+            }
+            if (text.startsWith("{{") && text.endsWith("}}")) {
+                String inner = text.substring(2, text.length() - 2);
+                if (!inner.contains("{{")) {
+                    return new TextTemplate(text, inner, null);
+                }
+            }
+            List<String> segments = new ArrayList<>();
+            int last = 0;
+            do {
+                segments.add(text.substring(last, matcher.start()));
+                segments.add(matcher.group(1));
+                last = matcher.end();
+            } while (matcher.find());
+            segments.add(text.substring(last));
+            return new TextTemplate(text, null, segments);
+        }
+
+        private JsonNode resolve(Function<String, JsonNode> resolver) {
+            if (wholeKey != null) {
+                return resolver.apply(wholeKey);
+            }
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < segments.size(); i++) {
+                if (i % 2 == 0) {
+                    result.append(segments.get(i));
+                } else {
+                    JsonNode value = resolver.apply(segments.get(i));
+                    result.append(value.isTextual() ? value.asText() : value.toString());
+                }
+            }
+            return new TextNode(result.toString());
+        }
+
+        @Override
+        JsonNode evaluate(Function<String, JsonNode> resolver, int depth) {
+            if (depth > MAX_DEPTH) {
+                return new TextNode(source);
+            }
+            return evaluateResolved(resolve(resolver), resolver, depth + 1);
+        }
+
+        @Override
+        void collectKeys(Set<String> keys) {
+            if (wholeKey != null) {
+                keys.add(wholeKey);
+                return;
+            }
+            for (int i = 1; i < segments.size(); i += 2) {
+                keys.add(segments.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Step json object whose placeholders are resolved per field on first read instead of all at once, so fields
+ * a branch never reads (description, retry of a select that fails, ...) cost no lookups and report no errors.
+ * A resolved field is kept for later reads of the same object. Objects with placeholders in their field names
+ * are resolved as a whole up front, the field names are not known before that.
+ */
+public class LazyPlaceholderObject {
+    private final AutomationStepBasicInfo baseInfo;
+    private final JsonNode source;
+    private final StringBuilder errorMessage;
+    private final Map<String, JsonNode> resolved = new HashMap<>();
+
+    private LazyPlaceholderObject(AutomationStepBasicInfo baseInfo, JsonNode source, StringBuilder errorMessage) {
+        this.baseInfo = baseInfo;
+        this.source = source;
+        this.errorMessage = errorMessage;
+    }
+
+    // null when element is no json object, after resolving it when its placeholders make it one
+    public static LazyPlaceholderObject of(AutomationStepBasicInfo baseInfo, JsonNode element, StringBuilder errorMessage) {
+        if (element.isObject() && !hasPlaceholderInFieldName(element)) {
+            return new LazyPlaceholderObject(baseInfo, element, errorMessage);
+        }
+        JsonNode replaced = PlaceholderReplaceHelper.replaceDataObjectForTestDataAndAutoSystemVariables(
+                baseInfo, element, errorMessage);
+        if (!replaced.isObject()) {
+            return null;
+        }
+        LazyPlaceholderObject lazyObject = new LazyPlaceholderObject(baseInfo, replaced, errorMessage);
+        replaced.fields().forEachRemaining(entry -> lazyObject.resolved.put(entry.getKey(), entry.getValue()));
+        return lazyObject;
+    }
+
+    public boolean has(String field) {
+        return source.has(field);
+    }
+
+    // null when the field is missing, like JsonNode.get
+    public JsonNode get(String field) {
+        JsonNode value = resolved.get(field);
+        if (value != null || !source.has(field)) {
+            return value;
+        }
+        value = source.get(field);
+        // sql stays a template like in JsonTemplate, compileSqlWithBindParameters binds its placeholders
+        if (!("sql".equals(field) && value.isTextual())) {
+            value = PlaceholderReplaceHelper.replaceDataObjectForTestDataAndAutoSystemVariables(
+                    baseInfo, value, errorMessage);
+        }
+        resolved.put(field, value);
+        return value;
+    }
+
+    private static boolean hasPlaceholderInFieldName(JsonNode element) {
+        Iterator<String> fieldNames = element.fieldNames();
+        while (fieldNames.hasNext()) {
+            if (fieldNames.next().contains("{{")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
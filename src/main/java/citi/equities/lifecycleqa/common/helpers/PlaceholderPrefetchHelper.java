@@ -0,0 +1,175 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
+import citi.equities.lifecycleqa.common.enums.LIFDBStatement;
+import citi.equities.lifecycleqa.common.utils.DBUtil;
+import citi.equities.lifecycleqa.common.utils.DataTypeUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the global / scenario / xml placeholders of a step with one query per source type before
+ * substitution, instead of one query per key. Values go into AutomationStepBasicInfo.resolvedVariables,
+ * where fetchFinalDataByVariableSource reads them. A batch that fails is skipped, its keys are then resolved
+ * one by one as before and report their own errors.
+ */
+public class PlaceholderPrefetchHelper {
+    private static final Logger log = LoggerFactory.getLogger(PlaceholderPrefetchHelper.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static void prefetch(AutomationStepBasicInfo baseInfo, Set<String> keys, ObjectNode variable) {
+        List<String> globalKeys = new ArrayList<>();
+        List<String> scenarioKeys = new ArrayList<>();
+        List<String> xmlKeys = new ArrayList<>();
+        for (String key : keys) {
+            if (baseInfo.getResolvedVariables().containsKey(key)) {
+                continue;
+            }
+            // global and xml are map reads while VariableCacheHelper holds a copy
+            switch (PlaceholderReplaceHelper.fetchSourceType(baseInfo, key, variable).toLowerCase()) {
+                case "global":
+                    if (!VariableCacheHelper.isAvailable()) {
+                        globalKeys.add(key);
+                    }
+                    break;
+                case "scenario":
+                    scenarioKeys.add(key);
+                    break;
+                case "xml":
+                    if (!VariableCacheHelper.isAvailable()) {
+                        xmlKeys.add(key);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        // a single key gains nothing from the batch, it is resolved by its own query
+        if (globalKeys.size() > 1) {
+            prefetchGlobal(baseInfo, globalKeys);
+        }
+        if (scenarioKeys.size() > 1) {
+            prefetchScenario(baseInfo, scenarioKeys);
+        }
+        if (xmlKeys.size() > 1) {
+            prefetchXml(baseInfo, xmlKeys);
+        }
+    }
+
+    // same match as the single key lookup: config_key LIKE '%automation.variables%<key>%', region+env profile before GLOBAL
+    private static void prefetchGlobal(AutomationStepBasicInfo baseInfo, List<String> keys) {
+        List<String> patterns = new ArrayList<>();
+        for (String key : keys) {
+            patterns.add("%automation.variables%" + key + "%");
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("runId", baseInfo.getRunId());
+        params.put("caseId", baseInfo.getCaseId());
+        params.put("patterns", patterns);
+        params.put("profile", baseInfo.getRegion() + baseInfo.getEnv());
+        JsonNode rows = query(baseInfo, LIFDBStatement.FetchAutoSystemVariablesByPatterns, params);
+        if (rows == null) {
+            return;
+        }
+
+        String profile = (baseInfo.getRegion() + baseInfo.getEnv()).toUpperCase();
+        for (int i = 0; i < keys.size(); i++) {
+            Pattern likePattern = convertLikeToRegex(patterns.get(i));
+            JsonNode profileValue = null;
+            JsonNode globalValue = null;
+            for (JsonNode row : rows) {
+                if (!likePattern.matcher(row.path("configKey").asText("")).matches()) {
+                    continue;
+                }
+                String rowProfile = row.path("profile").asText("").toUpperCase();
+                if (profileValue == null && profile.equals(rowProfile)) {
+                    profileValue = row.path("value");
+                } else if (globalValue == null && "GLOBAL".equals(rowProfile)) {
+                    globalValue = row.path("value");
+                }
+            }
+            JsonNode value = profileValue != null ? profileValue : globalValue;
+            baseInfo.getResolvedVariables().put(keys.get(i), toPlaceholderValue(value));
+        }
+    }
+
+    // the audit row as one json object, keys that are no column are left to the single key lookup
+    private static void prefetchScenario(AutomationStepBasicInfo baseInfo, List<String> keys) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("runId", baseInfo.getRunId());
+        params.put("caseId", baseInfo.getCaseId());
+        JsonNode row = query(baseInfo, LIFDBStatement.FetchAutoCaseAuditRowAsJson, params);
+        if (row == null || !row.isObject()) {
+            return;
+        }
+        for (String key : keys) {
+            if (row.has(key)) {
+                baseInfo.getResolvedVariables().put(key, toPlaceholderValue(row.get(key)));
+            }
+        }
+    }
+
+    private static void prefetchXml(AutomationStepBasicInfo baseInfo, List<String> keys) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("names", keys);
+        JsonNode rows = query(baseInfo, LIFDBStatement.FetchAutoCaseXmlFileValues, params);
+        if (rows == null) {
+            return;
+        }
+        for (String key : keys) {
+            JsonNode value = null;
+            for (JsonNode row : rows) {
+                if (key.equals(row.path("name").asText())) {
+                    value = row.path("value");
+                    break;
+                }
+            }
+            baseInfo.getResolvedVariables().put(key, toPlaceholderValue(value));
+        }
+    }
+
+    // null when the batch failed, an empty select is an empty array
+    private static JsonNode query(AutomationStepBasicInfo baseInfo, LIFDBStatement statement, Map<String, Object> params) {
+        StringBuilder errorMessage = new StringBuilder();
+        JsonNode result = DynamicDataSourceContextHolder.executeReadOnly(baseInfo.getRunId(),
+                () -> DBUtil.executeLIF(statement.name(), false, errorMessage, params));
+        if (errorMessage.length() > 0) {
+            log.warn("Batch placeholder lookup {} failed, resolve its keys one by one: {}", statement, errorMessage);
+            return null;
+        }
+        return result.isNull() ? objectMapper.createArrayNode() : result;
+    }
+
+    // text values are read as json like the single key lookup does, a missing value is NullNode
+    private static JsonNode toPlaceholderValue(JsonNode value) {
+        if (value == null || value.isMissingNode() || value.isNull()) {
+            return NullNode.getInstance();
+        }
+        return value.isTextual() ? DataTypeUtil.convertToJsonNode(value.asText()) : value;
+    }
+
+    static Pattern convertLikeToRegex(String likePattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : likePattern.toCharArray()) {
+            if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
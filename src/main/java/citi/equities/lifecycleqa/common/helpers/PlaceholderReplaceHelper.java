@@ -6,12 +6,15 @@ import com.fasterxml.jackson.databind.node.*;
 import citi.equities.lifecycleqa.common.config.GlobalData;
 import citi.equities.lifecycleqa.common.config.InitialConfig;
 import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
+import citi.equities.lifecycleqa.common.entities.ParameterizedSql;
+import citi.equities.lifecycleqa.common.enums.StepPhase;
 import citi.equities.lifecycleqa.common.utils.DBUtil;
 import citi.equities.lifecycleqa.common.utils.DataTypeUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,6 +22,12 @@ public class PlaceholderReplaceHelper {
     private static final Logger log = LoggerFactory.getLogger(PlaceholderReplaceHelper.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
     private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{\\{([^\\{\\}]*?)\\}\\}");
+    private static final Set<String> TYPED_LITERAL_KEYWORDS = Set.of("DATE", "TIME", "TIMESTAMP", "TIMESTAMPTZ", "INTERVAL", "ZONE");
+    // clauses after which a number is a value again, not a column position
+    private static final Set<String> CLAUSE_KEYWORDS = Set.of("SELECT", "FROM", "WHERE", "HAVING", "LIMIT", "OFFSET",
+            "FETCH", "UNION", "INTERSECT", "EXCEPT", "RETURNING", "SET", "VALUES", "ON", "JOIN", "WINDOW", "FOR");
+    // the number after these is a row count: mssql TOP takes no parameter, and analyzeSqlWithIsSelectRowColumnNumber reads LIMIT 1
+    private static final Set<String> ROW_LIMIT_KEYWORDS = Set.of("TOP", "LIMIT", "OFFSET", "FETCH");
 
     public static List<String> findAllPlaceHolderKeyListInJsonElement(JsonNode jsonElement, List<String> ignoreOriginalList) {
         List<String> needList = new ArrayList<>();
@@ -60,75 +69,279 @@ public class PlaceholderReplaceHelper {
 
     public static JsonNode replaceDataObjectForTestDataAndAutoSystemVariables(
             AutomationStepBasicInfo baseInfo, JsonNode jsonElement, StringBuilder errorMessage) {
-        return replaceDataObjectForTestDataAndAutoSystemVariables(
+        return baseInfo.getPhaseTimer().time(StepPhase.Placeholder, () -> replaceDataObjectForTestDataAndAutoSystemVariables(
                 baseInfo, jsonElement, errorMessage, 1,
-                objectMapper.createObjectNode(), objectMapper.createObjectNode());
+                objectMapper.createObjectNode(), objectMapper.createObjectNode()));
     }
 
+    /**
+     * Evaluates the compiled template of jsonElement, see {@link JsonTemplate}. Nodes without placeholders
+     * are shared with jsonElement instead of copied, the result is read only.
+     */
     public static JsonNode replaceDataObjectForTestDataAndAutoSystemVariables(
             AutomationStepBasicInfo baseInfo, JsonNode jsonElement, StringBuilder errorMessage,
             int index, ObjectNode testData, ObjectNode variable) {
+        JsonTemplate template = JsonTemplate.compile(jsonElement);
+        if (template == null) {
+            return jsonElement;
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        template.collectKeys(keys);
+        PlaceholderPrefetchHelper.prefetch(baseInfo, keys, variable);
+        return template.evaluate(key -> fetchFinalDataByVariableSource(
+                baseInfo, key, errorMessage, testData, variable), index);
+    }
+
+    public static JsonNode replaceDataValueFromAutoTestDataAndAutoSystemVariables(
+            AutomationStepBasicInfo baseInfo, String str, StringBuilder errorMessage) {
+        return baseInfo.getPhaseTimer().time(StepPhase.Placeholder, () -> replaceDataValueFromAutoTestDataAndAutoSystemVariables(
+                baseInfo, str, errorMessage, objectMapper.createObjectNode(),
+                objectMapper.createObjectNode()));
+    }
 
-        final int currentIndex = index;
+    /**
+     * Compiles the placeholders of a step sql into bind parameters instead of splicing values as literals:
+     * a quoted literal holding a placeholder ('{{id}}', '%{{name}}%') becomes one string parameter,
+     * an unquoted placeholder resolving to a number or boolean becomes a typed parameter, and other
+     * unquoted placeholders (table names, column lists, sql fragments) are still spliced as text.
+     * Typed literals (DATE '{{d}}', INTERVAL '{{n}} day'), numbers in ORDER BY / GROUP BY (column positions),
+     * row counts after TOP / LIMIT / OFFSET / FETCH and $$ quoted bodies are spliced as text, with ' doubled in
+     * literals and bodies like before. -- and block comments are kept as is.
+     */
+    public static ParameterizedSql compileSqlWithBindParameters(
+            AutomationStepBasicInfo baseInfo, String sqlTemplate, StringBuilder errorMessage) {
+        return baseInfo.getPhaseTimer().time(StepPhase.Placeholder, () -> {
+            ObjectNode testData = objectMapper.createObjectNode();
+            ObjectNode variable = objectMapper.createObjectNode();
+            Set<String> keys = new LinkedHashSet<>();
+            Matcher keyMatcher = PLACEHOLDER_PATTERN.matcher(sqlTemplate);
+            while (keyMatcher.find()) {
+                keys.add(keyMatcher.group(1));
+            }
+            PlaceholderPrefetchHelper.prefetch(baseInfo, keys, variable);
+
+            return compileSql(sqlTemplate,
+                    key -> fetchFinalDataByVariableSource(baseInfo, key, errorMessage, testData, variable),
+                    content -> resolveSqlText(baseInfo, content, errorMessage, testData, variable));
+        });
+    }
 
-        if (jsonElement.isObject()) {
-            ObjectNode newNode = objectMapper.createObjectNode();
-            jsonElement.fields().forEachRemaining(entry -> {
-                String key = entry.getKey();
-                JsonNode value = entry.getValue();
+    /**
+     * @param resolveKey  value of one placeholder key
+     * @param resolveText text with all its placeholders replaced
+     */
+    static ParameterizedSql compileSql(String sqlTemplate, Function<String, JsonNode> resolveKey,
+                                       Function<String, String> resolveText) {
+        StringBuilder sql = new StringBuilder();
+        StringBuilder mapperSql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
 
-                if ("sql".equals(key) && value.isTextual()) {
-                    JsonNode replaced = replaceDataValueFromAutoTestDataAndAutoSystemVariables(
-                            baseInfo, value.asText(), errorMessage, testData, variable, true);
-                    newNode.set("sql", replaced);
+        int length = sqlTemplate.length();
+        int position = 0;
+        boolean inIdentifier = false;
+        boolean inOrderOrGroupBy = false;
+        boolean afterRowLimit = false;
+        while (position < length) {
+            char current = sqlTemplate.charAt(position);
+            if (current == '"') {
+                inIdentifier = !inIdentifier;
+                appendText(sql, mapperSql, String.valueOf(current));
+                position++;
+            } else if (inIdentifier) {
+                if (current == '{' && sqlTemplate.startsWith("{{", position)) {
+                    Matcher matcher = PLACEHOLDER_PATTERN.matcher(sqlTemplate);
+                    if (matcher.find(position) && matcher.start() == position) {
+                        appendText(sql, mapperSql, toSqlText(resolveKey.apply(matcher.group(1))));
+                        position = matcher.end();
+                        continue;
+                    }
+                }
+                appendText(sql, mapperSql, String.valueOf(current));
+                position++;
+            } else if (sqlTemplate.startsWith("--", position) || sqlTemplate.startsWith("/*", position)) {
+                int end = findCommentEnd(sqlTemplate, position);
+                appendText(sql, mapperSql, sqlTemplate.substring(position, end));
+                position = end;
+            } else if (current == '$' && !isIdentifierPart(sqlTemplate, position - 1) && findDollarTag(sqlTemplate, position) != null) {
+                String tag = findDollarTag(sqlTemplate, position);
+                int bodyEnd = sqlTemplate.indexOf(tag, position + tag.length());
+                int end = bodyEnd < 0 ? length : bodyEnd + tag.length();
+                String body = sqlTemplate.substring(position + tag.length(), bodyEnd < 0 ? length : bodyEnd);
+                appendText(sql, mapperSql, tag + resolveQuotedBody(body, resolveKey) + (bodyEnd < 0 ? "" : tag));
+                position = end;
+            } else if (current == '\'') {
+                int end = findLiteralEnd(sqlTemplate, position);
+                String literal = sqlTemplate.substring(position, end);
+                String content = literal.length() >= 2 && literal.endsWith("'")
+                        ? literal.substring(1, literal.length() - 1).replace("''", "'") : null;
+                if (content == null || !PLACEHOLDER_PATTERN.matcher(content).find()) {
+                    appendText(sql, mapperSql, literal);
+                } else if (isTypedLiteral(sqlTemplate, position)) {
+                    appendText(sql, mapperSql, "'" + resolveText.apply(content).replace("'", "''") + "'");
                 } else {
-                    JsonNode finalKeyNode = replaceDataValueFromAutoTestDataAndAutoSystemVariables(
-                            baseInfo, key, errorMessage, testData, variable, false);
-                    String finalKey = finalKeyNode.isTextual() ? finalKeyNode.asText() : key;
-                    JsonNode newValue = replaceDataObjectForTestDataAndAutoSystemVariables(
-                            baseInfo, value, errorMessage, currentIndex, testData, variable);
-                    newNode.set(finalKey, newValue);
+                    params.add(resolveText.apply(content));
+                    appendBindParameter(sql, mapperSql, params.size() - 1);
                 }
-            });
-            return newNode;
-        } else if (jsonElement.isArray()) {
-            ArrayNode newArray = objectMapper.createArrayNode();
-            for (JsonNode value : jsonElement) {
-                newArray.add(replaceDataObjectForTestDataAndAutoSystemVariables(
-                        baseInfo, value, errorMessage, currentIndex, testData, variable));
+                position = end;
+            } else if (current == '{' && sqlTemplate.startsWith("{{", position)) {
+                Matcher matcher = PLACEHOLDER_PATTERN.matcher(sqlTemplate);
+                if (!matcher.find(position) || matcher.start() != position) {
+                    appendText(sql, mapperSql, String.valueOf(current));
+                    position++;
+                    continue;
+                }
+                JsonNode value = resolveKey.apply(matcher.group(1));
+                if (!inOrderOrGroupBy && !afterRowLimit && (value.isNumber() || value.isBoolean())) {
+                    params.add(value.isNumber() ? value.numberValue() : value.booleanValue());
+                    appendBindParameter(sql, mapperSql, params.size() - 1);
+                } else {
+                    appendText(sql, mapperSql, toSqlText(value));
+                }
+                afterRowLimit = false;
+                position = matcher.end();
+            } else if (Character.isLetter(current) && !isIdentifierPart(sqlTemplate, position - 1)) {
+                int end = position;
+                while (end < length && isIdentifierPart(sqlTemplate, end)) {
+                    end++;
+                }
+                String word = sqlTemplate.substring(position, end).toUpperCase();
+                if (word.equals("ORDER") || word.equals("GROUP")) {
+                    inOrderOrGroupBy = nextWord(sqlTemplate, end).equals("BY");
+                } else if (CLAUSE_KEYWORDS.contains(word)) {
+                    inOrderOrGroupBy = false;
+                }
+                // FETCH FIRST / NEXT {{n}} ROWS ONLY
+                afterRowLimit = ROW_LIMIT_KEYWORDS.contains(word)
+                        || (afterRowLimit && (word.equals("FIRST") || word.equals("NEXT")));
+                appendText(sql, mapperSql, sqlTemplate.substring(position, end));
+                position = end;
+            } else {
+                appendText(sql, mapperSql, String.valueOf(current));
+                position++;
             }
-            return newArray;
-        } else if (jsonElement.isTextual()) {
-            String content = jsonElement.asText();
-            if (currentIndex > 3 || !PLACEHOLDER_PATTERN.matcher(content).find()) {
-                return jsonElement;
+        }
+        return new ParameterizedSql(sql.toString(), mapperSql.toString(), params);
+    }
+
+    private static void appendText(StringBuilder sql, StringBuilder mapperSql, String text) {
+        sql.append(text);
+        mapperSql.append(text);
+    }
+
+    private static String toSqlText(JsonNode value) {
+        return value.isTextual() ? value.asText() : value.toString();
+    }
+
+    // the body is one string to the database, so ' in values is doubled wherever the placeholder sits
+    private static String resolveQuotedBody(String body, Function<String, JsonNode> resolveKey) {
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(body);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            JsonNode value = DataTypeUtil.processJsonElementForSingleQuotation(resolveKey.apply(matcher.group(1)));
+            matcher.appendReplacement(result, Matcher.quoteReplacement(toSqlText(value)));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    // index after the closing quote, '' inside the literal is an escaped quote
+    private static int findLiteralEnd(String sql, int start) {
+        int position = start + 1;
+        while (position < sql.length()) {
+            if (sql.charAt(position) == '\'') {
+                if (position + 1 < sql.length() && sql.charAt(position + 1) == '\'') {
+                    position += 2;
+                    continue;
+                }
+                return position + 1;
             }
-            int nextIndex = currentIndex + 1;
-            JsonNode replaceElement = replaceDataValueFromAutoTestDataAndAutoSystemVariables(
-                    baseInfo, content, errorMessage, testData, variable, false);
-            return replaceDataObjectForTestDataAndAutoSystemVariables(
-                    baseInfo, replaceElement, errorMessage, nextIndex, testData, variable);
+            position++;
         }
+        return sql.length();
+    }
 
-        return jsonElement;
+    // end of line for --, after */ for block comments
+    private static int findCommentEnd(String sql, int start) {
+        if (sql.startsWith("--", start)) {
+            int end = sql.indexOf('\n', start);
+            return end < 0 ? sql.length() : end;
+        }
+        int end = sql.indexOf("*/", start + 2);
+        return end < 0 ? sql.length() : end + 2;
     }
 
-    public static JsonNode replaceDataValueFromAutoTestDataAndAutoSystemVariables(
-            AutomationStepBasicInfo baseInfo, String str, StringBuilder errorMessage) {
-        return replaceDataValueFromAutoTestDataAndAutoSystemVariables(
-                baseInfo, str, errorMessage, objectMapper.createObjectNode(),
-                objectMapper.createObjectNode(), false);
+    // $$ or $tag$ at start, null otherwise ($1 style markers are no tag)
+    private static String findDollarTag(String sql, int start) {
+        int position = start + 1;
+        if (position < sql.length() && Character.isDigit(sql.charAt(position))) {
+            return null;
+        }
+        while (position < sql.length() && (Character.isLetterOrDigit(sql.charAt(position)) || sql.charAt(position) == '_')) {
+            position++;
+        }
+        return position < sql.length() && sql.charAt(position) == '$' ? sql.substring(start, position + 1) : null;
+    }
+
+    // DATE '...', TIMESTAMP '...', INTERVAL '...', TIMESTAMP WITH TIME ZONE '...'
+    private static boolean isTypedLiteral(String sql, int quoteStart) {
+        int end = quoteStart;
+        while (end > 0 && Character.isWhitespace(sql.charAt(end - 1))) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && isIdentifierPart(sql, start - 1)) {
+            start--;
+        }
+        return start < end && !isIdentifierPart(sql, start - 1)
+                && TYPED_LITERAL_KEYWORDS.contains(sql.substring(start, end).toUpperCase());
+    }
+
+    private static String nextWord(String sql, int start) {
+        int position = start;
+        while (position < sql.length() && Character.isWhitespace(sql.charAt(position))) {
+            position++;
+        }
+        int end = position;
+        while (end < sql.length() && isIdentifierPart(sql, end)) {
+            end++;
+        }
+        return sql.substring(position, end).toUpperCase();
+    }
+
+    private static boolean isIdentifierPart(String sql, int index) {
+        if (index < 0 || index >= sql.length()) {
+            return false;
+        }
+        char c = sql.charAt(index);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static String resolveSqlText(AutomationStepBasicInfo baseInfo, String content, StringBuilder errorMessage,
+                                         ObjectNode testData, ObjectNode variable) {
+        String text = content;
+        // values can hold placeholders themselves, resolve the same depth as replaceDataObject does
+        for (int depth = 0; depth < 3 && PLACEHOLDER_PATTERN.matcher(text).find(); depth++) {
+            JsonNode value = replaceDataValueFromAutoTestDataAndAutoSystemVariables(
+                    baseInfo, text, errorMessage, testData, variable);
+            text = value.isTextual() ? value.asText() : value.toString();
+        }
+        return text;
+    }
+
+    private static void appendBindParameter(StringBuilder sql, StringBuilder mapperSql, int index) {
+        sql.append('?');
+        mapperSql.append("#{params[").append(index).append("]}");
     }
 
     public static JsonNode replaceDataValueFromAutoTestDataAndAutoSystemVariables(
             AutomationStepBasicInfo baseInfo, String str, StringBuilder errorMessage,
-            ObjectNode testData, ObjectNode variable, boolean isInSQL) {
+            ObjectNode testData, ObjectNode variable) {
 
         // Type 1: {{key}}
         if (str.startsWith("{{") && str.endsWith("}}")) {
             String inner = str.substring(2, str.length() - 2);
             if (!inner.contains("{{")) {
-                return fetchFinalDataByVariableSource(baseInfo, inner, errorMessage, testData, variable, isInSQL);
+                return fetchFinalDataByVariableSource(baseInfo, inner, errorMessage, testData, variable);
             }
         }
 
@@ -138,7 +351,7 @@ public class PlaceholderReplaceHelper {
         while (matcher.find()) {
             String group = matcher.group(1);
             JsonNode jsonElement = fetchFinalDataByVariableSource(
-                    baseInfo, group, errorMessage, testData, variable, isInSQL);
+                    baseInfo, group, errorMessage, testData, variable);
             String replacement;
             if (jsonElement.isObject() || jsonElement.isArray()) {
                 replacement = jsonElement.toString();
@@ -156,16 +369,10 @@ public class PlaceholderReplaceHelper {
 
     private static JsonNode fetchFinalDataByVariableSource(
             AutomationStepBasicInfo baseInfo, String group, StringBuilder errorMessage,
-            ObjectNode testData, ObjectNode variable, boolean isInSQL) {
+            ObjectNode testData, ObjectNode variable) {
 
         boolean isStepDebug = baseInfo.isStepDebug();
-        String sourceType = "Data";
-
-        if (variable.has(group)) {
-            sourceType = variable.get(group).asText("Data");
-        } else if (baseInfo.getVariables() != null && baseInfo.getVariables().has(group)) {
-            sourceType = baseInfo.getVariables().get(group).asText("Data");
-        }
+        String sourceType = fetchSourceType(baseInfo, group, variable);
 
         JsonNode finalElement;
 
@@ -179,21 +386,15 @@ public class PlaceholderReplaceHelper {
             }
         } else if ("Data".equals(sourceType)) {
             JsonNode fetchedElement = fetchElementFromJsonNode(testData, group);
-            if (!fetchedElement.isNull()) {
-                finalElement = fetchedElement;
-            } else {
-                String[] parts = group.split("\\.");
-                StringBuilder selectKey = new StringBuilder();
-                for (int i = 0; i < parts.length; i++) {
-                    if (i > 0) selectKey.append(",");
-                    selectKey.append("'").append(parts[i]).append("'::text");
-                }
-                String sql = "SELECT COALESCE(jsonb_extract_path(\"testData\", " + selectKey +
-                        "),null) FROM auto_case_audit WHERE \"runId\" = '" + baseInfo.getRunId() +
-                        "' AND \"caseId\" = " + baseInfo.getCaseId() + " LIMIT 1";
-                errorMessage.setLength(0);
-                finalElement = DBUtil.executeLIF(sql, true, errorMessage);
+            if (fetchedElement.isNull() && group.startsWith("response") && baseInfo.getResponses() != null) {
+                fetchedElement = fetchElementFromJsonNode(baseInfo.getResponses(), group);
+            }
+            if (fetchedElement.isNull()) {
+                fetchedElement = TestDataContextHelper.fetchKey(baseInfo.getRunId(), baseInfo.getCaseId(), group, errorMessage);
             }
+            finalElement = fetchedElement;
+        } else if (baseInfo.getResolvedVariables().containsKey(group)) {
+            finalElement = baseInfo.getResolvedVariables().get(group);
         } else {
             String runId = baseInfo.getRunId();
             int caseId = baseInfo.getCaseId();
@@ -201,12 +402,20 @@ public class PlaceholderReplaceHelper {
 
             switch (sourceType.toLowerCase()) {
                 case "global":
+                    JsonNode cachedVariable = VariableCacheHelper.fetchGlobalVariable(baseInfo, group);
+                    if (cachedVariable != null) {
+                        return cachedVariable;
+                    }
                     sql = "select distinct COALESCE(value,'') from auto_system_variable where config_key like '%" + group + "%' limit 1";
                     break;
                 case "scenario":
                     sql = "select \"" + group + "\" from auto_case_audit where \"runId\" = '" + runId + "' and \"caseId\" = " + caseId + " limit 1";
                     break;
                 case "xml":
+                    JsonNode cachedXmlFile = VariableCacheHelper.fetchXmlFile(group);
+                    if (cachedXmlFile != null) {
+                        return cachedXmlFile;
+                    }
                     sql = "select COALESCE(value,'') from auto_case_xmlfile where name = '" + group + "' limit 1";
                     break;
                 case "config":
@@ -240,15 +449,27 @@ public class PlaceholderReplaceHelper {
             }
 
             errorMessage.setLength(0);
-            finalElement = DBUtil.executeLIF(fullSql, true, errorMessage);
+            String lookupSql = fullSql;
+            finalElement = DynamicDataSourceContextHolder.executeReadOnly(runId,
+                    () -> DBUtil.executeLIF(lookupSql, true, errorMessage));
+            if (errorMessage.length() == 0) {
+                baseInfo.getResolvedVariables().put(group, finalElement);
+            }
         }
 
-        if (isInSQL) {
-            return DataTypeUtil.processJsonElementForSingleQuotation(finalElement);
-        }
         return finalElement;
     }
 
+    // Data unless the step or case variables map the key to another source (global, scenario, xml, config)
+    static String fetchSourceType(AutomationStepBasicInfo baseInfo, String group, ObjectNode variable) {
+        if (variable.has(group)) {
+            return variable.get(group).asText("Data");
+        } else if (baseInfo.getVariables() != null && baseInfo.getVariables().has(group)) {
+            return baseInfo.getVariables().get(group).asText("Data");
+        }
+        return "Data";
+    }
+
     private static JsonNode fetchElementFromJsonNode(JsonNode jsonNode, String path) {
         String[] keys = path.split("\\.");
         JsonNode currentElement = jsonNode;
@@ -1,8 +1,10 @@
 package citi.equities.lifecycleqa.common.helpers;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import citi.equities.lifecycleqa.common.config.InitialConfig;
 import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
@@ -19,7 +21,16 @@ import io.restassured.response.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
 
 public class ReportHelper {
     private static final Logger log = LoggerFactory.getLogger(ReportHelper.class);
@@ -62,7 +73,9 @@ public class ReportHelper {
         currentStep.setSeqNumber(indexId);
 
         Result result = new Result();
-        result.setDuration((DataTypeUtil.fetchShanghaiZoneTimeStampNow() - stepStart) * 1000000);
+        long durationMillis = DataTypeUtil.fetchShanghaiZoneTimeStampNow() - stepStart;
+        result.setDuration(durationMillis * 1000000);
+        result.setPhases(stepInfo.getPhaseTimer().snapshot(durationMillis));
         result.setStatus(stepStatus.getStatus());
 
         if (errorMessage.length() > 0) {
@@ -94,12 +107,20 @@ public class ReportHelper {
         log.info("Start to upload dashboard by runId {}", runId);
         StringBuilder errorMessage = new StringBuilder();
 
-        JsonNode featuresNode = DBUtil.executeLIF(LIFDBStatement.FetchFinalFeature.name(), false, errorMessage,
-                java.util.Collections.singletonMap("runId", runId));
-        ArrayNode features = featuresNode.isArray() ? (ArrayNode) featuresNode : objectMapper.createArrayNode();
+        // report reads go to the replica once the run's last writes are old enough to be there
+        FeatureSpill features = spillFeatures(runId, errorMessage);
+        try {
+            return uploadSpilledFeatures(runId, dashboardType, features, errorMessage);
+        } finally {
+            features.delete();
+        }
+    }
 
+    private static ObjectNode uploadSpilledFeatures(String runId, DashboardType dashboardType, FeatureSpill features,
+                                                    StringBuilder errorMessage) {
         String configSql = "select distinct config from auto_case_audit where \"runId\" = '" + runId + "' limit 1";
-        JsonNode configNode = DBUtil.executeLIF(configSql, true, errorMessage);
+        JsonNode configNode = DynamicDataSourceContextHolder.executeReadOnly(runId,
+                () -> DBUtil.executeLIF(configSql, true, errorMessage));
         ObjectNode config = configNode.isObject() ? (ObjectNode) configNode : objectMapper.createObjectNode();
 
         if (errorMessage.length() > 0) {
@@ -135,34 +156,33 @@ public class ReportHelper {
         return result;
     }
 
-    private static JsonNode uploadMondo(ArrayNode features, ObjectNode config) {
+    private static JsonNode uploadMondo(FeatureSpill features, ObjectNode config) {
         log.info("Start to uploadDashboard");
-        ObjectNode mondoJSON = buildMondo(config, features);
         String mondoUrl = "http://mondo.nam.nsroot.net:8000/api/automation2/upload";
         log.info("Mondo URL = {}", mondoUrl);
 
-        Response mondoResponse = RestAssured.given()
-                .contentType(ContentType.JSON)
-                .body(mondoJSON.toString())
-                .post(mondoUrl);
+        Path mondoBody = null;
+        Response mondoResponse;
+        try {
+            mondoBody = writeUploadBody(buildMondo(config), features, false);
+            mondoResponse = RestAssured.given()
+                    .contentType(ContentType.JSON)
+                    .body(mondoBody.toFile())
+                    .post(mondoUrl);
+        } catch (IOException e) {
+            log.error("Failed to write Mondo upload body: {}", e.getMessage());
+            return objectMapper.convertValue("Failed to write Mondo upload body: " + e.getMessage(), JsonNode.class);
+        } finally {
+            deleteQuietly(mondoBody);
+        }
 
         log.info("Mondo Response = {}", mondoResponse.asString());
         log.info("Mondo StatusCode = {}", mondoResponse.statusCode());
         return DataTypeUtil.convertToJsonNode(mondoResponse.asString());
     }
 
-    private static JsonNode uploadFast(ArrayNode features, ObjectNode config) {
-        double totalPassedCases = 0;
-        double totalCases = 0;
-
-        for (JsonNode feature : features) {
-            if (feature.isObject()) {
-                totalPassedCases += feature.has("passedCases") ? feature.get("passedCases").asDouble(0) : 0;
-                totalCases += feature.has("totalCases") ? feature.get("totalCases").asDouble(1) : 1;
-            }
-        }
-
-        double averagePassRate = totalCases > 0 ? totalPassedCases / totalCases : 0.0;
+    private static JsonNode uploadFast(FeatureSpill features, ObjectNode config) {
+        double averagePassRate = features.totalCases > 0 ? features.totalPassedCases / features.totalCases : 0.0;
 
         StringBuilder errorMessage = new StringBuilder();
         JsonNode passRateNode = DBUtil.executeLIF(
@@ -175,7 +195,6 @@ public class ReportHelper {
         }
 
         if (averagePassRate >= passRate) {
-            ObjectNode fastJSON = buildFast(config, features);
             String fastDashboardEnv = config.has("fastDashboardEnv") ? config.get("fastDashboardEnv").asText("") : "";
             String baseUrl = "uat".equalsIgnoreCase(fastDashboardEnv)
                     ? "https://fast-equities-api-icg-msst-fast-167813.apps.namicg39034u.ecs.dyn.nsroot.net"
@@ -183,11 +202,21 @@ public class ReportHelper {
             String fastServiceUpload = baseUrl + "/v2/api/report";
             log.info("Fast URL = {}", fastServiceUpload);
 
-            Response fastResponse = RestAssured.given()
-                    .contentType(ContentType.JSON)
-                    .body(fastJSON.toString())
-                    .when()
-                    .post(fastServiceUpload);
+            Path fastBody = null;
+            Response fastResponse;
+            try {
+                fastBody = writeUploadBody(buildFast(config), features, true);
+                fastResponse = RestAssured.given()
+                        .contentType(ContentType.JSON)
+                        .body(fastBody.toFile())
+                        .when()
+                        .post(fastServiceUpload);
+            } catch (IOException e) {
+                log.error("Failed to write Fast upload body: {}", e.getMessage());
+                return objectMapper.convertValue("Failed to write Fast upload body: " + e.getMessage(), JsonNode.class);
+            } finally {
+                deleteQuietly(fastBody);
+            }
 
             log.info("Fast StatusCode = {}", fastResponse.statusCode());
             return DataTypeUtil.convertToJsonNode(fastResponse.asString());
@@ -196,7 +225,8 @@ public class ReportHelper {
         }
     }
 
-    private static ObjectNode buildMondo(ObjectNode autoConfiguration, ArrayNode features) {
+    // the features are added as "json" by writeUploadBody
+    private static ObjectNode buildMondo(ObjectNode autoConfiguration) {
         ObjectNode result = objectMapper.createObjectNode();
         result.put("name", "Mondo");
         result.put("project", autoConfiguration.has("fastProject") ? autoConfiguration.get("fastProject").asText("") : "");
@@ -213,11 +243,11 @@ public class ReportHelper {
         result.put("runId", autoConfiguration.has("runId") ? autoConfiguration.get("runId").asText("") : "");
         result.put("label", autoConfiguration.has("label") ? autoConfiguration.get("label").asText("") : "");
         result.put("serviceName", autoConfiguration.has("serviceName") ? autoConfiguration.get("serviceName").asText("") : "");
-        result.set("json", features);
         return result;
     }
 
-    private static ObjectNode buildFast(ObjectNode autoConfiguration, ArrayNode features) {
+    // the features are added as "json" text by writeUploadBody
+    private static ObjectNode buildFast(ObjectNode autoConfiguration) {
         ObjectNode result = objectMapper.createObjectNode();
         result.put("releaseTest", true);
         result.put("releaseVersion", autoConfiguration.has("releaseVersion") ? autoConfiguration.get("releaseVersion").asText("") : "");
@@ -229,8 +259,94 @@ public class ReportHelper {
                 (autoConfiguration.has("env") ? autoConfiguration.get("env").asText("") : "");
         result.put("env", env);
         result.put("testScope", autoConfiguration.has("testScope") ? autoConfiguration.get("testScope").asText("") : "");
-        result.put("json", features.toString());
         result.put("buildId", autoConfiguration.has("buildId") ? autoConfiguration.get("buildId").asText("") : "");
         return result;
     }
+
+    /**
+     * FetchFinalFeature rows are written to a temp file while the cursor reads them, with the case counts the
+     * Fast pass rate needs, so a large run is never held as one ArrayNode. A failed read is reported in errorMessage.
+     */
+    private static FeatureSpill spillFeatures(String runId, StringBuilder errorMessage) {
+        FeatureSpill spill = new FeatureSpill();
+        try {
+            spill.file = Files.createTempFile("features-" + runId + "-", ".json");
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(spill.file.toFile(), JsonEncoding.UTF8)) {
+                generator.writeStartArray();
+                int count = DynamicDataSourceContextHolder.executeReadOnly(runId, () -> DBUtil.streamLIF(
+                        LIFDBStatement.FetchFinalFeature.name(), Collections.singletonMap("runId", runId), feature -> {
+                            spill.add(feature);
+                            try {
+                                generator.writeTree(feature);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }, errorMessage));
+                generator.writeEndArray();
+                log.info("Spilled {} features of runId {} to {}", count, runId, spill.file);
+            }
+        } catch (IOException e) {
+            DataTypeUtil.appendErrorMessage(errorMessage, "Failed to spill features of runId " + runId + ": " + e.getMessage());
+            log.error("Failed to spill features of runId {}: {}", runId, e.getMessage());
+        }
+        return spill;
+    }
+
+    // header fields, then the spilled features as "json": the array itself, or its text when asText (Fast expects a string)
+    private static Path writeUploadBody(ObjectNode header, FeatureSpill features, boolean asText) throws IOException {
+        Path bodyFile = Files.createTempFile("dashboard-", ".json");
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(bodyFile.toFile(), JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            Iterator<Map.Entry<String, JsonNode>> fields = header.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                generator.writeFieldName(field.getKey());
+                generator.writeTree(field.getValue());
+            }
+            generator.writeFieldName("json");
+            if (asText) {
+                try (Reader reader = Files.newBufferedReader(features.file, StandardCharsets.UTF_8)) {
+                    generator.writeString(reader, -1);
+                }
+            } else {
+                try (JsonParser parser = objectMapper.getFactory().createParser(features.file.toFile())) {
+                    parser.nextToken();
+                    generator.copyCurrentStructure(parser);
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            deleteQuietly(bodyFile);
+            throw e;
+        }
+        return bodyFile;
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete temp file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static class FeatureSpill {
+        private Path file;
+        private double totalPassedCases;
+        private double totalCases;
+
+        private void add(JsonNode feature) {
+            if (feature.isObject()) {
+                totalPassedCases += feature.has("passedCases") ? feature.get("passedCases").asDouble(0) : 0;
+                totalCases += feature.has("totalCases") ? feature.get("totalCases").asDouble(1) : 1;
+            }
+        }
+
+        private void delete() {
+            deleteQuietly(file);
+        }
+    }
 }
@@ -0,0 +1,277 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.config.InitialConfig;
+import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
+import citi.equities.lifecycleqa.common.entities.ParsedResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import io.restassured.http.Header;
+import io.restassured.response.Response;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Captures api responses for the audit without materialising oversized bodies as strings.
+ * Bodies up to response.capture.max.bytes are parsed in memory, larger ones are spilled to
+ * response.capture.dir and only referenced (path, size, preview) from the audit.
+ * On the sync path the spill happens while the http client entity is read, through SPILL_INTERCEPTOR,
+ * so rest assured only ever buffers the reference. Spill files are deleted when their case ends.
+ */
+public class ResponseCaptureHelper {
+    private static final Logger log = LoggerFactory.getLogger(ResponseCaptureHelper.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int BUFFER_SIZE = 8192;
+    private static final int PREVIEW_SIZE = 4096;
+
+    // step whose request runs on this thread, set around the sync api call
+    private static final ThreadLocal<AutomationStepBasicInfo> CURRENT_STEP = new ThreadLocal<>();
+    // runId|caseId -> spilled files of the case
+    private static final Map<String, Set<Path>> SPILL_FILES = new ConcurrentHashMap<>();
+
+    /**
+     * Registered on the pooled http clients. Wraps the entity of responses sent for a step so that its body is
+     * read through the capture limit; rest assured adds its own decompression after this interceptor, so the
+     * entity is decoded here and reported without content encoding.
+     */
+    public static final HttpResponseInterceptor SPILL_INTERCEPTOR = (response, context) -> {
+        AutomationStepBasicInfo baseInfo = CURRENT_STEP.get();
+        HttpEntity entity = response.getEntity();
+        if (baseInfo != null && entity != null) {
+            response.setEntity(new SpillingEntity(entity, baseInfo));
+        }
+    };
+
+    public static void beginCapture(AutomationStepBasicInfo baseInfo) {
+        CURRENT_STEP.set(baseInfo);
+    }
+
+    public static void endCapture() {
+        CURRENT_STEP.remove();
+    }
+
+    public static void deleteSpillFiles(String runId, int caseId) {
+        Set<Path> files = SPILL_FILES.remove(runId + "|" + caseId);
+        if (files == null) {
+            return;
+        }
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete spilled response body {}: {}", file, e.getMessage());
+            }
+        }
+        log.info("Deleted {} spilled response bodies of caseId={}", files.size(), caseId);
+    }
+
+    public static ObjectNode captureHeaders(Response response) {
+        ObjectNode headers = objectMapper.createObjectNode();
+        for (Header header : response.headers()) {
+            headers.put(header.getName(), header.getValue());
+        }
+        return headers;
+    }
+
+    public static JsonNode captureBody(AutomationStepBasicInfo baseInfo, ParsedResponse response) {
+        long maxBytes = fetchMaxBytes();
+
+        try {
+            // body already read by a retry stop condition, reuse it instead of reading again
+            if (response.isBodyLoaded()) {
+                byte[] body = response.getBody();
+                if (body.length > maxBytes) {
+                    return spillToFile(baseInfo, body, null, 0, null);
+                }
+                JsonNode json = response.getJson();
+                return json != null && !json.isMissingNode() ? json : parseBody(body);
+            }
+
+            try (InputStream inputStream = response.getResponse().asInputStream()) {
+                if (inputStream == null) {
+                    return new TextNode("");
+                }
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                byte[] chunk = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(chunk)) != -1) {
+                    if (buffer.size() + read > maxBytes) {
+                        return spillToFile(baseInfo, buffer.toByteArray(), chunk, read, inputStream);
+                    }
+                    buffer.write(chunk, 0, read);
+                }
+                return parseBody(buffer.toByteArray());
+            }
+        } catch (IOException e) {
+            log.error("Failed to capture response body: {}", e.getMessage());
+            return new TextNode("Failed to capture response body: " + e.getMessage());
+        }
+    }
+
+    private static JsonNode parseBody(byte[] body) {
+        if (body.length == 0) {
+            return new TextNode("");
+        }
+        try {
+            JsonNode node = objectMapper.readTree(body);
+            if (node != null && !node.isMissingNode()) {
+                return node;
+            }
+        } catch (IOException e) {
+            // not json, keep it as text
+        }
+        return new TextNode(cleanText(body, body.length));
+    }
+
+    private static JsonNode spillToFile(AutomationStepBasicInfo baseInfo, byte[] head, byte[] chunk, int read,
+                                        InputStream remaining) throws IOException {
+        Path directory = Paths.get(InitialConfig.INFO_CONFIG.getOrDefault("response.capture.dir",
+                System.getProperty("java.io.tmpdir") + "/eh-api-responses").toString());
+        Files.createDirectories(directory);
+        Path file = directory.resolve(baseInfo.getRunId() + "-" + baseInfo.getCaseId() + "-" +
+                baseInfo.getStepId() + "-" + baseInfo.getIndexId() + ".body");
+        SPILL_FILES.computeIfAbsent(baseInfo.getRunId() + "|" + baseInfo.getCaseId(), key -> ConcurrentHashMap.newKeySet())
+                .add(file);
+
+        long size = head.length;
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            outputStream.write(head);
+            if (chunk != null) {
+                outputStream.write(chunk, 0, read);
+                size += read;
+            }
+            if (remaining != null) {
+                byte[] copy = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = remaining.read(copy)) != -1) {
+                    outputStream.write(copy, 0, count);
+                    size += count;
+                }
+            }
+        }
+
+        log.info("Response body of step {} exceeds capture limit, spilled {} bytes to {}", baseInfo.getStepId(), size, file);
+        ObjectNode reference = objectMapper.createObjectNode();
+        reference.put("spilledTo", file.toAbsolutePath().toString());
+        reference.put("size", size);
+        reference.put("preview", cleanText(head, Math.min(head.length, PREVIEW_SIZE)));
+        return reference;
+    }
+
+    private static long fetchMaxBytes() {
+        return Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("response.capture.max.bytes", "10485760").toString());
+    }
+
+    // keep printable ascii only, same as the former [^\x20-\x7E] regex
+    private static String cleanText(byte[] body, int length) {
+        String text = new String(body, 0, length, StandardCharsets.UTF_8);
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c <= 0x7E) {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    // the body as rest assured sees it: the decoded content, or the spill reference once it exceeds the limit
+    private static class SpillingEntity extends HttpEntityWrapper {
+        private final AutomationStepBasicInfo baseInfo;
+        private byte[] content;
+
+        private SpillingEntity(HttpEntity wrappedEntity, AutomationStepBasicInfo baseInfo) {
+            super(wrappedEntity);
+            this.baseInfo = baseInfo;
+        }
+
+        @Override
+        public synchronized InputStream getContent() throws IOException {
+            if (content == null) {
+                content = read();
+            }
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            try (InputStream inputStream = getContent()) {
+                inputStream.transferTo(outputStream);
+            }
+        }
+
+        @Override
+        public synchronized long getContentLength() {
+            return content == null ? -1L : content.length;
+        }
+
+        @Override
+        public org.apache.http.Header getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        private byte[] read() throws IOException {
+            long maxBytes = fetchMaxBytes();
+            try (InputStream inputStream = decode(wrappedEntity)) {
+                if (inputStream == null) {
+                    return new byte[0];
+                }
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                byte[] chunk = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(chunk)) != -1) {
+                    if (buffer.size() + read > maxBytes) {
+                        return objectMapper.writeValueAsBytes(spillToFile(baseInfo, buffer.toByteArray(), chunk, read, inputStream));
+                    }
+                    buffer.write(chunk, 0, read);
+                }
+                return buffer.toByteArray();
+            }
+        }
+
+        private static InputStream decode(HttpEntity entity) throws IOException {
+            InputStream inputStream = entity.getContent();
+            org.apache.http.Header encoding = entity.getContentEncoding();
+            if (inputStream == null || encoding == null) {
+                return inputStream;
+            }
+            String value = encoding.getValue().trim().toLowerCase();
+            if (value.contains("gzip")) {
+                return new GZIPInputStream(inputStream);
+            }
+            if (value.contains("deflate")) {
+                return new InflaterInputStream(inputStream);
+            }
+            return inputStream;
+        }
+    }
+}
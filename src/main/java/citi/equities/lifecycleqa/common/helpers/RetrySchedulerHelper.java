@@ -0,0 +1,156 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.entities.RetryPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Shared retry scheduler for API and DB polling, with exponential backoff, jitter and an optional max
+ * elapsed budget taken from {@link RetryPolicy}. Future based callers (async API mode, service guard waits)
+ * wait on timer futures of a single scheduler thread and hold no thread in between. Synchronous callers
+ * (sync API retry, DB polling in DBUtil.executeSQL) sleep on their own thread between attempts, so a polling
+ * step keeps its TestNG worker for the whole wait; the sleep is interruptible so TestNG timeouts and
+ * shutdown still stop it.
+ */
+public class RetrySchedulerHelper {
+    private static final Logger log = LoggerFactory.getLogger(RetrySchedulerHelper.class);
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "retry-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static CompletableFuture<Void> delay(long delayMillis) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (delayMillis <= 0) {
+            future.complete(null);
+            return future;
+        }
+        SCHEDULER.schedule(() -> future.complete(null), delayMillis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    /**
+     * Blocking wait for synchronous callers.
+     * @return false when the thread was interrupted, the interrupt flag is set again for the caller
+     */
+    public static boolean sleep(long delayMillis) {
+        if (delayMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(delayMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @param failedAttempts attempts done so far, starting from 1
+     */
+    public static long computeDelayMillis(RetryPolicy policy, int failedAttempts) {
+        double delay = policy.getInitialIntervalMillis() * Math.pow(policy.getMultiplier(), failedAttempts - 1);
+        delay = Math.min(delay, policy.getMaxIntervalMillis());
+        if (policy.getJitter() > 0) {
+            double spread = delay * policy.getJitter();
+            delay = delay - spread + ThreadLocalRandom.current().nextDouble() * spread * 2;
+        }
+        return Math.max(0L, (long) delay);
+    }
+
+    /**
+     * Non-blocking retry, the attempt itself returns a future and the chain never holds a thread while waiting.
+     */
+    public static <T> CompletableFuture<T> scheduleWithRetry(String name, IntFunction<CompletableFuture<T>> attempt,
+                                                             Predicate<T> retryOnResult, Predicate<Throwable> retryOnException,
+                                                             RetryPolicy policy) {
+        return scheduleAttempt(name, attempt, retryOnResult, retryOnException, policy, 1, System.currentTimeMillis());
+    }
+
+    /**
+     * Blocking variant for synchronous callers, the calling thread sleeps between attempts and stays occupied.
+     * An interrupt ends the retry with the result or failure of the last attempt.
+     */
+    public static <T> T executeWithRetry(String name, IntFunction<T> attempt, Predicate<T> retryOnResult,
+                                         Predicate<Throwable> retryOnException, RetryPolicy policy) {
+        long start = System.currentTimeMillis();
+        int attemptNumber = 1;
+        while (true) {
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = attempt.apply(attemptNumber);
+            } catch (Throwable throwable) {
+                failure = throwable;
+            }
+
+            boolean retry = failure != null ? retryOnException.test(failure) : retryOnResult.test(result);
+            long delayMillis = retry ? nextDelay(name, policy, attemptNumber, start) : -1L;
+            if (delayMillis >= 0 && !sleep(delayMillis)) {
+                log.warn("Retry wait for {} is interrupted after {} attempts", name, attemptNumber);
+                delayMillis = -1L;
+            }
+            if (delayMillis < 0) {
+                if (failure != null) {
+                    throw RetrySchedulerHelper.<RuntimeException>sneakyThrow(failure);
+                }
+                return result;
+            }
+            attemptNumber++;
+        }
+    }
+
+    private static <T> CompletableFuture<T> scheduleAttempt(String name, IntFunction<CompletableFuture<T>> attempt,
+                                                            Predicate<T> retryOnResult, Predicate<Throwable> retryOnException,
+                                                            RetryPolicy policy, int attemptNumber, long start) {
+        CompletableFuture<T> current;
+        try {
+            current = attempt.apply(attemptNumber);
+        } catch (Throwable throwable) {
+            current = CompletableFuture.failedFuture(throwable);
+        }
+
+        return current.handle((result, throwable) -> {
+            Throwable failure = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            boolean retry = failure != null ? retryOnException.test(failure) : retryOnResult.test(result);
+            long delayMillis = retry ? nextDelay(name, policy, attemptNumber, start) : -1L;
+            if (delayMillis < 0) {
+                return failure != null ? CompletableFuture.<T>failedFuture(failure) : CompletableFuture.completedFuture(result);
+            }
+            return delay(delayMillis).thenCompose(ignore ->
+                    scheduleAttempt(name, attempt, retryOnResult, retryOnException, policy, attemptNumber + 1, start));
+        }).thenCompose(future -> future);
+    }
+
+    // returns -1 when no further attempt is allowed by attempts or elapsed budget
+    static long nextDelay(String name, RetryPolicy policy, int attemptNumber, long start) {
+        if (attemptNumber >= policy.getMaxAttempts()) {
+            return -1L;
+        }
+        long delayMillis = computeDelayMillis(policy, attemptNumber);
+        if (policy.getMaxElapsedMillis() > 0
+                && System.currentTimeMillis() - start + delayMillis > policy.getMaxElapsedMillis()) {
+            log.info("Stop retry for {} after {} attempts, max elapsed {} ms reached", name, attemptNumber, policy.getMaxElapsedMillis());
+            return -1L;
+        }
+        return delayMillis;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> RuntimeException sneakyThrow(Throwable throwable) throws E {
+        throw (E) throwable;
+    }
+}
@@ -0,0 +1,212 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.config.InitialConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Per serviceName circuit breaker, rate limiter and bulkhead around api calls, so a dead dependency
+ * fails the remaining steps fast instead of each one waiting for its socket timeout, and parallel
+ * suites together stay within the rateLimitPerSecond / maxInFlight set in auto_api_configuration.
+ * Waiting callers are served in arrival order (fair semaphore in the bulkhead, permits reserved
+ * in order by the rate limiter), so one suite can not starve the others of a shared service.
+ * The async path never waits for a permit on the calling thread: rate limit permits are reserved and
+ * waited for on a timer, the bulkhead is polled through timer futures, so bulkhead waiters are served
+ * roughly rather than strictly in arrival order.
+ */
+public class ServiceGuardHelper {
+    private static final Logger log = LoggerFactory.getLogger(ServiceGuardHelper.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static volatile CircuitBreakerRegistry circuitBreakerRegistry;
+    private static volatile BulkheadRegistry bulkheadRegistry;
+    private static volatile RateLimiterRegistry rateLimiterRegistry;
+
+    // breaker is outermost so an open service fails fast instead of queueing for permits first
+    public static <T> T executeGuarded(String serviceName, Supplier<T> call) {
+        Supplier<T> guarded = Bulkhead.decorateSupplier(fetchBulkhead(serviceName), call);
+        RateLimiter rateLimiter = fetchRateLimiter(serviceName);
+        if (rateLimiter != null) {
+            guarded = RateLimiter.decorateSupplier(rateLimiter, guarded);
+        }
+        return CircuitBreaker.decorateSupplier(fetchCircuitBreaker(serviceName), guarded).get();
+    }
+
+    // runs on the retry scheduler thread, so no permit is waited for by blocking it
+    public static <T> CompletableFuture<T> executeGuardedAsync(String serviceName, Supplier<CompletableFuture<T>> call) {
+        Bulkhead bulkhead = fetchBulkhead(serviceName);
+        RateLimiter rateLimiter = fetchRateLimiter(serviceName);
+        Supplier<CompletionStage<T>> guarded = () -> {
+            // the permit is reserved in arrival order and waited for on a timer, RequestNotPermitted (503) beyond the max wait
+            long waitNanos = rateLimiter == null ? 0L : rateLimiter.reservePermission();
+            if (waitNanos < 0) {
+                return CompletableFuture.failedFuture(RequestNotPermitted.createRequestNotPermitted(rateLimiter));
+            }
+            long deadline = System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(waitNanos) + fetchBulkheadMaxWaitMillis();
+            return RetrySchedulerHelper.delay(TimeUnit.NANOSECONDS.toMillis(waitNanos))
+                    .thenCompose(ignore -> callInBulkheadAsync(bulkhead, call, deadline));
+        };
+        return CircuitBreaker.decorateCompletionStage(fetchCircuitBreaker(serviceName), guarded)
+                .get()
+                .toCompletableFuture();
+    }
+
+    // the permit is released when the call completes, BulkheadFullException (503) once maxWait has passed
+    private static <T> CompletableFuture<T> callInBulkheadAsync(Bulkhead bulkhead, Supplier<CompletableFuture<T>> call, long deadline) {
+        if (!bulkhead.tryAcquirePermission()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return CompletableFuture.failedFuture(BulkheadFullException.createBulkheadFullException(bulkhead));
+            }
+            long pollMillis = Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("bulkhead.async.poll.ms", "50").toString());
+            return RetrySchedulerHelper.delay(Math.min(remaining, pollMillis))
+                    .thenCompose(ignore -> callInBulkheadAsync(bulkhead, call, deadline));
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (Throwable throwable) {
+            bulkhead.onComplete();
+            return CompletableFuture.failedFuture(throwable);
+        }
+        return future.whenComplete((result, throwable) -> bulkhead.onComplete());
+    }
+
+    public static ObjectNode fetchGuardMetrics() {
+        ObjectNode result = objectMapper.createObjectNode();
+        fetchCircuitBreakerRegistry().getAllCircuitBreakers().forEach(circuitBreaker -> {
+            ObjectNode item = objectMapper.createObjectNode();
+            item.put("state", circuitBreaker.getState().name());
+            item.put("failureRate", circuitBreaker.getMetrics().getFailureRate());
+            item.put("bufferedCalls", circuitBreaker.getMetrics().getNumberOfBufferedCalls());
+            item.put("notPermittedCalls", circuitBreaker.getMetrics().getNumberOfNotPermittedCalls());
+            Bulkhead bulkhead = fetchBulkhead(circuitBreaker.getName());
+            item.put("availableConcurrentCalls", bulkhead.getMetrics().getAvailableConcurrentCalls());
+            item.put("maxAllowedConcurrentCalls", bulkhead.getMetrics().getMaxAllowedConcurrentCalls());
+            fetchRateLimiterRegistry().find(circuitBreaker.getName()).ifPresent(rateLimiter -> {
+                item.put("rateLimitPerSecond", rateLimiter.getRateLimiterConfig().getLimitForPeriod());
+                item.put("availablePermissions", rateLimiter.getMetrics().getAvailablePermissions());
+                item.put("waitingThreads", rateLimiter.getMetrics().getNumberOfWaitingThreads());
+            });
+            result.set(circuitBreaker.getName(), item);
+        });
+        return result;
+    }
+
+    private static CircuitBreaker fetchCircuitBreaker(String serviceName) {
+        return fetchCircuitBreakerRegistry().circuitBreaker(buildGuardName(serviceName));
+    }
+
+    private static Bulkhead fetchBulkhead(String serviceName) {
+        String guardName = buildGuardName(serviceName);
+        BulkheadRegistry registry = fetchBulkheadRegistry();
+        int maxInFlight = InitialConfig.getServiceMaxInFlight(guardName);
+        if (maxInFlight <= 0) {
+            return registry.bulkhead(guardName);
+        }
+        // the config is only used when the bulkhead is first created for the service
+        return registry.bulkhead(guardName, () -> BulkheadConfig.from(registry.getDefaultConfig())
+                .maxConcurrentCalls(maxInFlight)
+                .build());
+    }
+
+    // null when the service has no rateLimitPerSecond configured
+    private static RateLimiter fetchRateLimiter(String serviceName) {
+        String guardName = buildGuardName(serviceName);
+        int limitPerSecond = InitialConfig.getServiceRateLimitPerSecond(guardName);
+        if (limitPerSecond <= 0) {
+            return null;
+        }
+        RateLimiterRegistry registry = fetchRateLimiterRegistry();
+        return registry.rateLimiter(guardName, () -> RateLimiterConfig.from(registry.getDefaultConfig())
+                .limitForPeriod(limitPerSecond)
+                .build());
+    }
+
+    private static long fetchBulkheadMaxWaitMillis() {
+        return Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("bulkhead.max.wait.seconds", "60").toString()) * 1000L;
+    }
+
+    private static String buildGuardName(String serviceName) {
+        return serviceName == null || serviceName.isBlank() ? "unknown" : serviceName.toLowerCase();
+    }
+
+    private static CircuitBreakerRegistry fetchCircuitBreakerRegistry() {
+        if (circuitBreakerRegistry == null) {
+            synchronized (ServiceGuardHelper.class) {
+                if (circuitBreakerRegistry == null) {
+                    CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                            .failureRateThreshold(Float.parseFloat(InitialConfig.INFO_CONFIG.getOrDefault("circuit.breaker.failure.rate", "50").toString()))
+                            .slidingWindowSize(Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("circuit.breaker.window.size", "20").toString()))
+                            .minimumNumberOfCalls(Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("circuit.breaker.min.calls", "5").toString()))
+                            .waitDurationInOpenState(Duration.ofSeconds(Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("circuit.breaker.open.seconds", "60").toString())))
+                            .permittedNumberOfCallsInHalfOpenState(Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("circuit.breaker.half.open.calls", "3").toString()))
+                            .recordExceptions(IOException.class, TimeoutException.class)
+                            .ignoreExceptions(BulkheadFullException.class, RequestNotPermitted.class)
+                            .build();
+                    CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(config);
+                    registry.getEventPublisher().onEntryAdded(event -> event.getAddedEntry().getEventPublisher()
+                            .onStateTransition(transition -> log.warn("Circuit breaker {} changed state: {}",
+                                    transition.getCircuitBreakerName(), transition.getStateTransition())));
+                    circuitBreakerRegistry = registry;
+                }
+            }
+        }
+        return circuitBreakerRegistry;
+    }
+
+    private static BulkheadRegistry fetchBulkheadRegistry() {
+        if (bulkheadRegistry == null) {
+            synchronized (ServiceGuardHelper.class) {
+                if (bulkheadRegistry == null) {
+                    // tryAcquirePermission waits up to maxWaitDuration, in async mode the wait is done by rescheduling
+                    long maxWaitMillis = AsyncAPIRequestHelper.isAsyncMode() ? 0L : fetchBulkheadMaxWaitMillis();
+                    BulkheadConfig config = BulkheadConfig.custom()
+                            .maxConcurrentCalls(Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("bulkhead.max.concurrent", "25").toString()))
+                            .maxWaitDuration(Duration.ofMillis(maxWaitMillis))
+                            .fairCallHandlingStrategyEnabled(true)
+                            .build();
+                    bulkheadRegistry = BulkheadRegistry.of(config);
+                }
+            }
+        }
+        return bulkheadRegistry;
+    }
+
+    private static RateLimiterRegistry fetchRateLimiterRegistry() {
+        if (rateLimiterRegistry == null) {
+            synchronized (ServiceGuardHelper.class) {
+                if (rateLimiterRegistry == null) {
+                    RateLimiterConfig config = RateLimiterConfig.custom()
+                            .limitForPeriod(Integer.MAX_VALUE)
+                            .limitRefreshPeriod(Duration.ofSeconds(1))
+                            .timeoutDuration(Duration.ofSeconds(Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("ratelimiter.max.wait.seconds", "60").toString())))
+                            .build();
+                    rateLimiterRegistry = RateLimiterRegistry.of(config);
+                }
+            }
+        }
+        return rateLimiterRegistry;
+    }
+}
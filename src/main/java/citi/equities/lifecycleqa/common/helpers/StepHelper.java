@@ -6,14 +6,18 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.f4b6a3.ulid.UlidCreator;
 import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
+import citi.equities.lifecycleqa.common.entities.ParsedResponse;
+import citi.equities.lifecycleqa.common.entities.StepPhaseTimer;
 import citi.equities.lifecycleqa.common.enums.AutoStepRunStatus;
 import citi.equities.lifecycleqa.common.enums.AutomationLoopKey;
-import citi.equities.lifecycleqa.common.utils.DBUtil;
+import citi.equities.lifecycleqa.common.enums.StepPhase;
 import citi.equities.lifecycleqa.common.utils.DataTypeUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class StepHelper {
     private static final Logger log = LoggerFactory.getLogger(StepHelper.class);
@@ -22,6 +26,7 @@ public class StepHelper {
     public static Map.Entry<AutoStepRunStatus, ArrayNode> doActionForAPITestStep(
             AutomationStepBasicInfo baseInfo, ObjectNode stepObject) {
         StringBuilder errorMessage = new StringBuilder();
+        baseInfo.setPhaseTimer(new StepPhaseTimer());
 
         // step 1: check before Loop and Loop
         JsonNode stepObjectNode = baseInfo.getStepObject();
@@ -67,10 +72,9 @@ public class StepHelper {
                 // step 2: beforeWait
                 if (jsonObject.has("beforeWait")) {
                     int waitTime = jsonObject.get("beforeWait").asInt(0);
-                    try {
-                        Thread.sleep(waitTime * 1000L);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
+                    if (!RetrySchedulerHelper.sleep(waitTime * 1000L)) {
+                        errorMessage.append("\nError: beforeWait of ").append(waitTime).append("s is interrupted");
+                        return;
                     }
                 }
 
@@ -314,10 +318,7 @@ public class StepHelper {
     }
 
     private static void backupTestData(AutomationStepBasicInfo baseInfo, StringBuilder errorMessage, AutoStepRunStatus stepStatus) {
-        String sql = "update auto_case_audit set \"testDataTrack\" = jsonb_set(\"testDataTrack\",'{\"" +
-                baseInfo.getStepId() + "\"}','\"" + stepStatus + "\"') where \"runId\" = '" +
-                baseInfo.getRunId() + "'";
-        DBUtil.executeLIF(sql, true, errorMessage);
+        TestDataContextHelper.endStep(baseInfo, stepStatus, errorMessage);
         log.info("End to run caseId={}, StepId={}, Status={}, update auto_case_audit.testDataTrack",
                 baseInfo.getCaseId(), baseInfo.getStepId(), stepStatus);
     }
@@ -330,13 +331,15 @@ public class StepHelper {
         JsonNode stepNode = baseInfo.getStepObject();
         ObjectNode stepObject = stepNode.isObject() ? (ObjectNode) stepNode : objectMapper.createObjectNode();
         long stepStart = DataTypeUtil.fetchShanghaiZoneTimeStampNow();
+        baseInfo.setPhaseTimer(new StepPhaseTimer());
 
         log.info("Start Run: runId={}, caseId={}, stepId={}, index={}", baseInfo.getRunId(), baseInfo.getCaseId(), stepId, indexId);
         output.append("RunId=").append(baseInfo.getRunId()).append(", caseId=").append(baseInfo.getCaseId())
                 .append(", stepId=").append(stepId).append(", index=").append(indexId).append("\n");
 
         // step 2: check before dependency and dependency
-        processSetForBeforeDependencyAndDependency(baseInfo, stepObject, errorMessage);
+        baseInfo.getPhaseTimer().time(StepPhase.Dependency,
+                () -> processSetForBeforeDependencyAndDependency(baseInfo, stepObject, errorMessage));
         if (errorMessage.length() > 0) {
             return new AbstractMap.SimpleEntry<>(
                     AutoStepRunStatus.Skipped,
@@ -348,7 +351,7 @@ public class StepHelper {
         ArrayNode beforeTestArray = stepObject.has("beforeTest") && stepObject.get("beforeTest").isArray()
                 ? (ArrayNode) stepObject.get("beforeTest")
                 : objectMapper.createArrayNode();
-        dbActionForJsonArray(baseInfo, beforeTestArray, errorMessage);
+        baseInfo.getPhaseTimer().time(StepPhase.DBSetup, () -> dbActionForJsonArray(baseInfo, beforeTestArray, errorMessage));
         if (errorMessage.length() > 0) {
             return new AbstractMap.SimpleEntry<>(
                     AutoStepRunStatus.Failed,
@@ -357,7 +360,14 @@ public class StepHelper {
         }
 
         // step 4: api request
-        APIRequestHelper.handleAPIRequest(baseInfo, output, errorMessage);
+        if (AsyncAPIRequestHelper.isAsyncMode()) {
+            ParsedResponse response = awaitResponse(APIRequestHelper.handleAPIRequestAsync(baseInfo, output, errorMessage), errorMessage);
+            if (response != null) {
+                APIRequestHelper.saveResponse(baseInfo, response, output, errorMessage);
+            }
+        } else {
+            APIRequestHelper.handleAPIRequest(baseInfo, output, errorMessage);
+        }
         if (errorMessage.length() > 0) {
             return new AbstractMap.SimpleEntry<>(
                     AutoStepRunStatus.Failed,
@@ -367,7 +377,8 @@ public class StepHelper {
 
         // step 5: afterTest and beforeEnd
         output.append("\nAssert after API Request\n---------------------------------\n");
-        boolean ifAssertSuccess = processSetForAfterTestAndBeforeEnd(baseInfo, stepObject, output, errorMessage);
+        boolean ifAssertSuccess = baseInfo.getPhaseTimer().time(StepPhase.Assertion,
+                () -> processSetForAfterTestAndBeforeEnd(baseInfo, stepObject, output, errorMessage));
         if (errorMessage.length() > 0) {
             return new AbstractMap.SimpleEntry<>(
                     AutoStepRunStatus.Failed,
@@ -381,4 +392,20 @@ public class StepHelper {
                 ReportHelper.buildStepForAPIBasic(baseInfo, stepStart, stepStatus, errorMessage, output)
         );
     }
+
+    // the testng case method is synchronous, so the worker still waits here for the response, interruptibly;
+    // async mode moves the socket I/O off the worker but does not free it while the request is in flight
+    private static ParsedResponse awaitResponse(CompletableFuture<ParsedResponse> future, StringBuilder errorMessage) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            DataTypeUtil.appendErrorMessage(errorMessage, "\nError: API request is interrupted");
+            return null;
+        } catch (ExecutionException e) {
+            DataTypeUtil.appendErrorMessage(errorMessage, "\nError: " + e.getCause());
+            return null;
+        }
+    }
 }
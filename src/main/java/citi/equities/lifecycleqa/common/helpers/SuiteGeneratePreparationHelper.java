@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import citi.equities.lifecycleqa.common.config.DataSourceRegistry;
 import citi.equities.lifecycleqa.common.config.InitialConfig;
 import citi.equities.lifecycleqa.common.entities.SuiteParameter;
 import citi.equities.lifecycleqa.common.entities.TestNGXMLParameter;
@@ -16,11 +17,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class SuiteGeneratePreparationHelper {
     private static final Logger log = LoggerFactory.getLogger(SuiteGeneratePreparationHelper.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    // runId -> scenario -> audits, handed to CommonSuiteListener and TestRunFactory in memory instead of as xml parameters
+    private static final Map<String, ObjectNode> PREPARED_SCENARIOS = new ConcurrentHashMap<>();
+
     public static ObjectNode prepareSuiteGenerateForSingleComponent(SuiteParameter suiteParameter, StringBuilder errorMessage) {
         TestNGXMLParameter request = prepareTestNGXMLParameter(suiteParameter, errorMessage);
         if (errorMessage.length() > 0) {
@@ -36,28 +42,38 @@ public class SuiteGeneratePreparationHelper {
             return errorNode;
         }
 
-        List<ObjectNode> autoCaseAudits = fetchAutoCaseAuditsForComponentOrId(suiteParameter.getAutomationType(), request, errorMessage);
+        // audits are filtered and grouped by scenario while the cursor reads them
+        boolean filterByLabels = suiteParameter.getAutomationMode() != AutomationMode.ID;
+        String profileStr = suiteParameter.getProfile().name();
+        Map<String, List<String>> labelsMap = new HashMap<>();
+        ObjectNode scenariosNode = objectMapper.createObjectNode();
+        ObjectNode[] firstAudit = new ObjectNode[1];
+        streamAutoCaseAuditsForComponentOrId(suiteParameter.getAutomationType(), request, audit -> {
+            if (filterByLabels && !matchesComponentLabels(profileStr, request, labelsMap, audit)) {
+                return;
+            }
+            if (firstAudit[0] == null) {
+                firstAudit[0] = audit;
+            }
+            String scenarioName = audit.has("scenario") ? audit.get("scenario").asText("") : "";
+            ArrayNode auditsArray = scenariosNode.has(scenarioName)
+                    ? (ArrayNode) scenariosNode.get(scenarioName) : scenariosNode.putArray(scenarioName);
+            auditsArray.add(audit);
+        }, errorMessage);
         if (errorMessage.length() > 0) {
             ObjectNode errorNode = objectMapper.createObjectNode();
             errorNode.put("error", errorMessage.toString());
             return errorNode;
         }
 
-        List<ObjectNode> autoCaseAuditsAfterFilter;
-        if (suiteParameter.getAutomationMode() == AutomationMode.ID) {
-            autoCaseAuditsAfterFilter = autoCaseAudits;
-        } else {
-            autoCaseAuditsAfterFilter = filterAutoCaseAuditsByLabels(suiteParameter.getProfile().name(), request, autoCaseAudits);
-        }
-
-        if (autoCaseAuditsAfterFilter.isEmpty()) {
+        if (firstAudit[0] == null) {
             log.error("No Test Cases Found! Can not find any test cases after filter for request-{}", request);
             ObjectNode errorNode = objectMapper.createObjectNode();
             errorNode.put("error", "No Test Cases Found! Can not find any test cases after filter for request-" + request);
             return errorNode;
         }
 
-        ObjectNode autoConfigurationsDB = fetchAutoConfigurationForSingleComponent(request, autoCaseAuditsAfterFilter, errorMessage);
+        ObjectNode autoConfigurationsDB = fetchAutoConfigurationForSingleComponent(request, firstAudit[0], errorMessage);
         if (autoConfigurationsDB.isEmpty()) {
             log.error("No Test Cases Found! Can not find any configuration for request-{} with errorMessage={}", request, errorMessage);
             ObjectNode errorNode = objectMapper.createObjectNode();
@@ -65,23 +81,6 @@ public class SuiteGeneratePreparationHelper {
             return errorNode;
         }
 
-        // Group scenarios
-        Map<String, List<ObjectNode>> groupedScenarios = new LinkedHashMap<>();
-        for (ObjectNode audit : autoCaseAuditsAfterFilter) {
-            String scenarioName = audit.has("scenario") ? audit.get("scenario").asText("") : "";
-            groupedScenarios.computeIfAbsent(scenarioName, k -> new ArrayList<>()).add(audit);
-        }
-
-        // Build result
-        ObjectNode scenariosNode = objectMapper.createObjectNode();
-        for (Map.Entry<String, List<ObjectNode>> entry : groupedScenarios.entrySet()) {
-            ArrayNode auditsArray = objectMapper.createArrayNode();
-            for (ObjectNode audit : entry.getValue()) {
-                auditsArray.add(audit);
-            }
-            scenariosNode.set(entry.getKey(), auditsArray);
-        }
-
         ObjectNode requestNode = objectMapper.createObjectNode();
         requestNode.set("scenarios", scenariosNode);
         requestNode.set("config", autoConfigurationsDB);
@@ -94,6 +93,21 @@ public class SuiteGeneratePreparationHelper {
         return result;
     }
 
+    public static void registerPreparedScenarios(String runId, ObjectNode scenarios) {
+        PREPARED_SCENARIOS.put(runId, scenarios);
+    }
+
+    // null when the suite was not prepared in this JVM, callers then read the xml parameters
+    public static ObjectNode fetchPreparedScenarios(String runId) {
+        return runId == null ? null : PREPARED_SCENARIOS.get(runId);
+    }
+
+    public static void releasePreparedScenarios(String runId) {
+        if (runId != null) {
+            PREPARED_SCENARIOS.remove(runId);
+        }
+    }
+
     private static ObjectNode buildFinalTestDataBasedOnProfile(JsonNode testData, String profile) {
         String p = profile.toLowerCase();
         Set<String> knownProfiles = new HashSet<>(Arrays.asList("namuat", "emeauat", "apacuat", "namdev", "emeadev", "apacdev", "namqa", "emeaqa", "apacqa"));
@@ -156,9 +170,10 @@ public class SuiteGeneratePreparationHelper {
         return true;
     }
 
-    private static List<ObjectNode> fetchAutoCaseAuditsForComponentOrId(
+    private static void streamAutoCaseAuditsForComponentOrId(
             AutomationType automationType,
             TestNGXMLParameter request,
+            Consumer<ObjectNode> auditConsumer,
             StringBuilder errorMessage) {
 
         Map<String, Object> queryParams = new HashMap<>();
@@ -187,82 +202,55 @@ public class SuiteGeneratePreparationHelper {
         log.info("SQL 参数: {}", queryParams);
 
         try {
-            JsonNode autoCaseAuditsFromDB = DBUtil.executeLIF(statementName, false, errorMessage, queryParams);
+            // rows are post-processed one by one while the cursor reads, instead of after loading them all
+            String profile = request.getProfile().name().toLowerCase();
+            DynamicDataSourceContextHolder.executeReadOnly(request.getRunId(), () -> DBUtil.streamLIF(statementName, queryParams, audit -> {
+                if (audit.isObject()) {
+                    ObjectNode newAudit = objectMapper.createObjectNode();
+                    audit.fieldNames().forEachRemaining(key -> {
+                        if (key.equalsIgnoreCase("testData")) {
+                            newAudit.set(key, buildFinalTestDataBasedOnProfile(audit.get(key), profile));
+                        } else {
+                            newAudit.set(key, audit.get(key));
+                        }
+                    });
+                    auditConsumer.accept(newAudit);
+                }
+            }, errorMessage));
             if (errorMessage.length() > 0) {
                 log.error("No Test Cases Found! Cannot find any test cases for request={} with errorMessage={}", request, errorMessage);
-                return Collections.emptyList();
             }
-
-            List<ObjectNode> result = new ArrayList<>();
-            if (autoCaseAuditsFromDB.isArray()) {
-                for (JsonNode audit : autoCaseAuditsFromDB) {
-                    if (audit.isObject()) {
-                        ObjectNode newAudit = objectMapper.createObjectNode();
-                        audit.fieldNames().forEachRemaining(key -> {
-                            if (key.equalsIgnoreCase("testData")) {
-                                ObjectNode processedTestData = buildFinalTestDataBasedOnProfile(
-                                        audit.get(key),
-                                        request.getProfile().name().toLowerCase()
-                                );
-                                newAudit.set(key, processedTestData);
-                            } else {
-                                newAudit.set(key, audit.get(key));
-                            }
-                        });
-                        result.add(newAudit);
-                    }
-                }
-            }
-            return result;
         } catch (Exception e) {
             log.error("No Test Cases Found! Can not find any test cases in auto_case_scenario table for request={}", request, e);
-            return Collections.emptyList();
         }
     }
 
-    private static List<ObjectNode> filterAutoCaseAuditsByLabels(String profileStr, TestNGXMLParameter request, List<ObjectNode> autoCaseAudits) {
-        Set<String> componentLikeFirsts = new HashSet<>();
-        for (ObjectNode audit : autoCaseAudits) {
-            String componentLikeFirst = audit.has("componentLikeFirst") ? audit.get("componentLikeFirst").asText("") : "";
-            if (!componentLikeFirst.isEmpty()) {
-                componentLikeFirsts.add(componentLikeFirst);
-            }
+    // labels are looked up once per componentLikeFirst, an audit passes when its component has no labels configured
+    private static boolean matchesComponentLabels(String profileStr, TestNGXMLParameter request,
+                                                  Map<String, List<String>> labelsMap, ObjectNode audit) {
+        String componentLikeFirst = audit.has("componentLikeFirst") ? audit.get("componentLikeFirst").asText("") : "";
+        String label = audit.has("label") ? audit.get("label").asText("") : "";
+        if (componentLikeFirst.isEmpty()) {
+            return true;
         }
 
-        Map<String, List<String>> labelsMap = new HashMap<>();
-        for (String clf : componentLikeFirsts) {
-            List<String> labels = InitialConfig.getComponentDependentLabels(clf, profileStr);
-            if (labels.isEmpty()) {
-                labels = InitialConfig.getComponentDependentLabels(clf, "global");
-            }
-            if (!labels.isEmpty()) {
-                labelsMap.put(clf, labels);
-            }
+        List<String> labels = labelsMap.computeIfAbsent(componentLikeFirst, clf -> {
+            List<String> componentLabels = InitialConfig.getComponentDependentLabels(clf, profileStr);
+            return componentLabels.isEmpty() ? InitialConfig.getComponentDependentLabels(clf, "global") : componentLabels;
+        });
+        if (labels.isEmpty() || labels.contains(label)) {
+            return true;
         }
-
-        List<ObjectNode> result = new ArrayList<>();
-        for (ObjectNode audit : autoCaseAudits) {
-            String componentLikeFirst = audit.has("componentLikeFirst") ? audit.get("componentLikeFirst").asText("") : "";
-            String label = audit.has("label") ? audit.get("label").asText("") : "";
-
-            if (componentLikeFirst.isEmpty() ||
-                    !labelsMap.containsKey(componentLikeFirst) ||
-                    labelsMap.get(componentLikeFirst).contains(label)) {
-                result.add(audit);
-            } else {
-                log.error("No Test Cases Found after filtering for component={}", request.getComponent());
-            }
-        }
-        return result;
+        log.error("No Test Cases Found after filtering for component={}", request.getComponent());
+        return false;
     }
 
     private static ObjectNode fetchAutoConfigurationForSingleComponent(
             TestNGXMLParameter request,
-            List<ObjectNode> autoCaseAuditsAfterFilter,
+            ObjectNode firstAudit,
             StringBuilder errorMessage) {
 
         try {
-            ObjectNode firstAudit = autoCaseAuditsAfterFilter.get(0);
             Map<String, Object> params = new HashMap<>();
             params.put("componentLikeFirst", firstAudit.has("componentLikeFirst") ? firstAudit.get("componentLikeFirst").asText("") : "");
             params.put("component", firstAudit.has("component") ? firstAudit.get("component").asText("") : "");
@@ -292,20 +280,12 @@ public class SuiteGeneratePreparationHelper {
         List<String> databasesList = InitialConfig.getComponentDependentDatabases(component, region + env);
 
         for (String dbType : databasesList) {
-            String connectionName;
-            if (dbType.equalsIgnoreCase("lif")) {
-                connectionName = dbType.toLowerCase();
-            } else {
-                connectionName = DBUtil.buildSqlSessionManagerName(dbType, region, env);
-            }
-
             boolean isConnected = false;
             try {
-                SqlSessionManager sessionManager = InitialConfig.DB_CONFIG.get(connectionName);
+                SqlSessionManager sessionManager = DataSourceRegistry.fetchSqlSessionManager(dbType, region, env, new StringBuilder());
                 if (sessionManager != null) {
-                    SqlSession session = sessionManager.openSession();
-                    if (session != null && session.getConnection() != null) {
-                        isConnected = !session.getConnection().isClosed();
+                    try (SqlSession session = sessionManager.openSession()) {
+                        isConnected = session.getConnection() != null && session.getConnection().isValid(5);
                     }
                 }
             } catch (Exception e) {
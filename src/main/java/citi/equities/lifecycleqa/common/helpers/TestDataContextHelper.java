@@ -0,0 +1,208 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.config.InitialConfig;
+import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
+import citi.equities.lifecycleqa.common.enums.AutoStepRunStatus;
+import citi.equities.lifecycleqa.common.enums.LIFDBStatement;
+import citi.equities.lifecycleqa.common.utils.DBUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind store for the testData / testDataTrack of a running case.
+ * The case testData is seeded once per (runId, caseId), from the audit at case start or with one select of
+ * auto_case_audit on the first lookup, and stored keys are applied on top, so "Data" placeholders are map reads.
+ * Changed keys are merged into auto_case_audit with a single update per flush instead of one jsonb_set per key.
+ * testdata.flush.mode: step (default) flushes at the end of every step, case only when the case ends,
+ * sync on every stored key. Only cases between startCase and endCase hold a context, anything else
+ * (step debug runs, late callers) reads and writes auto_case_audit directly.
+ */
+public class TestDataContextHelper {
+    private static final Logger log = LoggerFactory.getLogger(TestDataContextHelper.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final Map<String, CaseTestData> CONTEXTS = new ConcurrentHashMap<>();
+
+    public static void storeKey(AutomationStepBasicInfo baseInfo, String testDataKey, JsonNode testDataValue, StringBuilder errorMessage) {
+        CaseTestData context = CONTEXTS.get(buildContextKey(baseInfo.getRunId(), baseInfo.getCaseId()));
+        if (context == null) {
+            ObjectNode testData = objectMapper.createObjectNode();
+            testData.set(testDataKey, testDataValue);
+            merge(baseInfo.getRunId(), baseInfo.getCaseId(), testData, objectMapper.createObjectNode(), errorMessage);
+            return;
+        }
+        synchronized (context) {
+            context.testData.set(testDataKey, testDataValue);
+            context.dirtyTestData.set(testDataKey, testDataValue);
+        }
+        if ("sync".equalsIgnoreCase(fetchFlushMode())) {
+            flush(baseInfo.getRunId(), baseInfo.getCaseId(), errorMessage);
+        }
+    }
+
+    // case start: the audit testData is what the suite listener inserted into auto_case_audit
+    public static void startCase(String runId, int caseId, ObjectNode testData) {
+        CaseTestData context = CONTEXTS.computeIfAbsent(buildContextKey(runId, caseId), key -> new CaseTestData());
+        synchronized (context) {
+            seed(context, testData);
+        }
+    }
+
+    // NullNode when the key is neither in the case testData nor stored in this run
+    public static JsonNode fetchKey(String runId, int caseId, String path, StringBuilder errorMessage) {
+        CaseTestData context = CONTEXTS.get(buildContextKey(runId, caseId));
+        if (context == null) {
+            // no active case, a one-off read that is not kept
+            CaseTestData oneOff = new CaseTestData();
+            if (!loadTestData(runId, caseId, oneOff, errorMessage)) {
+                return NullNode.getInstance();
+            }
+            return readPath(oneOff.testData, path);
+        }
+        synchronized (context) {
+            if (!context.seeded && !loadTestData(runId, caseId, context, errorMessage)) {
+                return NullNode.getInstance();
+            }
+            return readPath(context.testData, path).deepCopy();
+        }
+    }
+
+    // step boundary: track the step status and flush unless the case is flushed as a whole
+    public static void endStep(AutomationStepBasicInfo baseInfo, AutoStepRunStatus stepStatus, StringBuilder errorMessage) {
+        CaseTestData context = CONTEXTS.get(buildContextKey(baseInfo.getRunId(), baseInfo.getCaseId()));
+        if (context == null) {
+            ObjectNode testDataTrack = objectMapper.createObjectNode();
+            testDataTrack.put(String.valueOf(baseInfo.getStepId()), String.valueOf(stepStatus));
+            merge(baseInfo.getRunId(), baseInfo.getCaseId(), objectMapper.createObjectNode(), testDataTrack, errorMessage);
+            return;
+        }
+        synchronized (context) {
+            context.dirtyTestDataTrack.put(String.valueOf(baseInfo.getStepId()), String.valueOf(stepStatus));
+        }
+        if (!"case".equalsIgnoreCase(fetchFlushMode())) {
+            flush(baseInfo.getRunId(), baseInfo.getCaseId(), errorMessage);
+        }
+    }
+
+    // case boundary: flush what is left and drop the context
+    public static void endCase(String runId, int caseId, StringBuilder errorMessage) {
+        flush(runId, caseId, errorMessage);
+        CONTEXTS.remove(buildContextKey(runId, caseId));
+    }
+
+    public static void flush(String runId, int caseId, StringBuilder errorMessage) {
+        CaseTestData context = CONTEXTS.get(buildContextKey(runId, caseId));
+        if (context == null) {
+            return;
+        }
+
+        ObjectNode testData;
+        ObjectNode testDataTrack;
+        synchronized (context) {
+            if (context.dirtyTestData.isEmpty() && context.dirtyTestDataTrack.isEmpty()) {
+                return;
+            }
+            testData = context.dirtyTestData;
+            testDataTrack = context.dirtyTestDataTrack;
+            context.dirtyTestData = objectMapper.createObjectNode();
+            context.dirtyTestDataTrack = objectMapper.createObjectNode();
+        }
+
+        if (!merge(runId, caseId, testData, testDataTrack, errorMessage)) {
+            // keep the keys dirty so the next flush retries them, newer values win
+            synchronized (context) {
+                testData.setAll(context.dirtyTestData);
+                context.dirtyTestData = testData;
+                testDataTrack.setAll(context.dirtyTestDataTrack);
+                context.dirtyTestDataTrack = testDataTrack;
+            }
+        }
+    }
+
+    private static boolean merge(String runId, int caseId, ObjectNode testData, ObjectNode testDataTrack, StringBuilder errorMessage) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("runId", runId);
+        params.put("caseId", caseId);
+        params.put("testData", testData.toString());
+        params.put("testDataTrack", testDataTrack.toString());
+
+        StringBuilder flushError = new StringBuilder();
+        DBUtil.executeLIF(LIFDBStatement.MergeAutoCaseAuditTestData.name(), false, flushError, params);
+        if (flushError.length() > 0) {
+            String errMsg = "Failed to store testData for runId: " + runId + ", caseId: " + caseId + " with error: " + flushError;
+            log.error(errMsg);
+            errorMessage.append(errMsg);
+            return false;
+        }
+        log.info("Flush testData keys {} and testDataTrack {} for runId: {}, caseId: {}",
+                testData.size(), testDataTrack.size(), runId, caseId);
+        return true;
+    }
+
+    // NullNode when the path does not exist
+    private static JsonNode readPath(JsonNode testData, String path) {
+        JsonNode current = testData;
+        for (String key : path.split("\\.")) {
+            if (current.isObject()) {
+                current = current.get(key);
+            } else if (current.isArray() && key.matches("\\d+")) {
+                current = current.get(Integer.parseInt(key));
+            } else {
+                return NullNode.getInstance();
+            }
+            if (current == null) {
+                return NullNode.getInstance();
+            }
+        }
+        return current;
+    }
+
+    // cases started without startCase read their testData once, a failed read is retried on the next lookup
+    private static boolean loadTestData(String runId, int caseId, CaseTestData context, StringBuilder errorMessage) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("runId", runId);
+        params.put("caseId", caseId);
+        StringBuilder loadError = new StringBuilder();
+        JsonNode testData = DynamicDataSourceContextHolder.executeReadOnly(runId,
+                () -> DBUtil.executeLIF(LIFDBStatement.FetchAutoCaseAuditTestData.name(), false, loadError, params));
+        if (loadError.length() > 0) {
+            String errMsg = "Failed to load testData for runId: " + runId + ", caseId: " + caseId + " with error: " + loadError;
+            log.error(errMsg);
+            errorMessage.append(errMsg);
+            return false;
+        }
+        seed(context, testData.isObject() ? (ObjectNode) testData : objectMapper.createObjectNode());
+        return true;
+    }
+
+    // keys stored before seeding are newer than the audit testData and win
+    private static void seed(CaseTestData context, ObjectNode testData) {
+        ObjectNode seeded = testData.deepCopy();
+        seeded.setAll(context.testData);
+        context.testData = seeded;
+        context.seeded = true;
+    }
+
+    private static String buildContextKey(String runId, int caseId) {
+        return runId + "|" + caseId;
+    }
+
+    private static String fetchFlushMode() {
+        return InitialConfig.INFO_CONFIG.getOrDefault("testdata.flush.mode", "step").toString();
+    }
+
+    private static class CaseTestData {
+        private ObjectNode testData = objectMapper.createObjectNode();
+        private boolean seeded;
+        private ObjectNode dirtyTestData = objectMapper.createObjectNode();
+        private ObjectNode dirtyTestDataTrack = objectMapper.createObjectNode();
+    }
+}
@@ -0,0 +1,225 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.config.InitialConfig;
+import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
+import citi.equities.lifecycleqa.common.enums.LIFDBStatement;
+import citi.equities.lifecycleqa.common.utils.DBUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory copy of the automation.variables rows of auto_system_variable and of auto_case_xmlfile for
+ * "global" and "xml" placeholders, so they are map reads instead of a LIKE scan per lookup.
+ * The copy is versioned and replaced as a whole: every variable.cache.refresh.seconds, or on the next
+ * lookup after invalidate(). Lookups return null while no copy could be loaded, callers then query the DB.
+ */
+public class VariableCacheHelper {
+    private static final Logger log = LoggerFactory.getLogger(VariableCacheHelper.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final AtomicLong VERSION = new AtomicLong();
+    private static volatile Snapshot snapshot;
+    private static volatile boolean stale = true;
+    // bumped by invalidate, a load that overlaps an invalidation leaves the copy stale
+    private static final AtomicLong INVALIDATIONS = new AtomicLong();
+    private static volatile ScheduledExecutorService refresher;
+    // runId|caseId -> component of the case, global variables are scoped by it
+    private static final Cache<String, String> CASE_COMPONENTS = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .maximumSize(10000)
+            .build();
+
+    /**
+     * Same match as the single key query: config_key LIKE '%automation.variables%<key>%' within the case
+     * component, the region+env profile before GLOBAL. The exact key automation.variables.<key> is checked first.
+     */
+    public static JsonNode fetchGlobalVariable(AutomationStepBasicInfo baseInfo, String key) {
+        Snapshot current = fetchSnapshot();
+        if (current == null) {
+            return null;
+        }
+        String component = fetchCaseComponent(baseInfo.getRunId(), baseInfo.getCaseId());
+        Map<String, Map<String, JsonNode>> variables = component == null ? null : current.globals.get(component);
+        if (variables == null) {
+            return NullNode.getInstance();
+        }
+
+        String profile = (baseInfo.getRegion() + baseInfo.getEnv()).toUpperCase();
+        Map<String, JsonNode> exact = variables.get("automation.variables." + key);
+        if (exact != null && (exact.containsKey(profile) || exact.containsKey("GLOBAL"))) {
+            return exact.containsKey(profile) ? exact.get(profile) : exact.get("GLOBAL");
+        }
+
+        Pattern likePattern = PlaceholderPrefetchHelper.convertLikeToRegex("%automation.variables%" + key + "%");
+        JsonNode globalValue = null;
+        for (Map.Entry<String, Map<String, JsonNode>> entry : variables.entrySet()) {
+            if (!likePattern.matcher(entry.getKey()).matches()) {
+                continue;
+            }
+            if (entry.getValue().containsKey(profile)) {
+                return entry.getValue().get(profile);
+            }
+            if (globalValue == null) {
+                globalValue = entry.getValue().get("GLOBAL");
+            }
+        }
+        return globalValue == null ? NullNode.getInstance() : globalValue;
+    }
+
+    public static JsonNode fetchXmlFile(String name) {
+        Snapshot current = fetchSnapshot();
+        if (current == null) {
+            return null;
+        }
+        JsonNode value = current.xmlFiles.get(name);
+        return value == null ? NullNode.getInstance() : value;
+    }
+
+    public static boolean isAvailable() {
+        return fetchSnapshot() != null;
+    }
+
+    // the next lookup reloads the copy, the previous one stays in use if that reload fails
+    public static ObjectNode invalidate() {
+        log.info("Variable cache version {} is invalidated, will reload on next lookup", VERSION.get());
+        INVALIDATIONS.incrementAndGet();
+        stale = true;
+        CASE_COMPONENTS.invalidateAll();
+        return fetchCacheMetrics();
+    }
+
+    public static ObjectNode fetchCacheMetrics() {
+        Snapshot current = snapshot;
+        ObjectNode metrics = objectMapper.createObjectNode();
+        metrics.put("version", current == null ? 0 : current.version);
+        metrics.put("loadedAt", current == null ? 0 : current.loadedAt);
+        metrics.put("stale", stale);
+        metrics.put("components", current == null ? 0 : current.globals.size());
+        metrics.put("xmlFiles", current == null ? 0 : current.xmlFiles.size());
+        metrics.put("cachedCases", CASE_COMPONENTS.estimatedSize());
+        return metrics;
+    }
+
+    private static Snapshot fetchSnapshot() {
+        if (!Boolean.parseBoolean(InitialConfig.INFO_CONFIG.getOrDefault("variable.cache.enabled", "true").toString())) {
+            return null;
+        }
+        if (stale) {
+            load(false);
+            scheduleRefreshIfNeeded();
+        }
+        return snapshot;
+    }
+
+    // lookups only wait for the load while stale, the scheduled refresh forces it in the background
+    private static synchronized void load(boolean force) {
+        if (!force && !stale) {
+            return;
+        }
+        long invalidations = INVALIDATIONS.get();
+        StringBuilder errorMessage = new StringBuilder();
+        Map<String, Map<String, Map<String, JsonNode>>> globals = new HashMap<>();
+        DBUtil.streamLIF(LIFDBStatement.FetchAutomationVariablesForCache.name(), null, row -> {
+            String component = row.path("component").asText(null);
+            String configKey = row.path("configKey").asText(null);
+            String profile = row.path("profile").asText(null);
+            if (component == null || configKey == null || profile == null) {
+                return;
+            }
+            globals.computeIfAbsent(component, key -> new HashMap<>())
+                    .computeIfAbsent(configKey, key -> new HashMap<>())
+                    .putIfAbsent(profile.toUpperCase(), row.path("value"));
+        }, errorMessage);
+        Map<String, JsonNode> xmlFiles = new HashMap<>();
+        DBUtil.streamLIF(LIFDBStatement.FetchAutoCaseXmlFilesForCache.name(), null, row -> {
+            if (row.hasNonNull("name")) {
+                xmlFiles.putIfAbsent(row.get("name").asText(), row.path("value"));
+            }
+        }, errorMessage);
+        if (errorMessage.length() > 0) {
+            // stays stale, the previous copy is served, or lookups query the DB when there is none, until a load succeeds
+            log.error("Failed to load variable cache, keep version {}: {}", VERSION.get(), errorMessage);
+            return;
+        }
+        snapshot = new Snapshot(VERSION.incrementAndGet(), globals, xmlFiles);
+        if (invalidations == INVALIDATIONS.get()) {
+            stale = false;
+        }
+        log.info("Loaded variable cache version {} with {} components and {} xml files",
+                snapshot.version, globals.size(), xmlFiles.size());
+    }
+
+    private static void scheduleRefreshIfNeeded() {
+        if (refresher != null) {
+            return;
+        }
+        synchronized (VariableCacheHelper.class) {
+            if (refresher != null) {
+                return;
+            }
+            long refreshSeconds = Long.parseLong(InitialConfig.INFO_CONFIG.getOrDefault("variable.cache.refresh.seconds", "300").toString());
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "variable-cache-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    load(true);
+                } catch (Exception e) {
+                    log.error("Failed to refresh variable cache: {}", e.getMessage());
+                }
+            }, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+            refresher = executor;
+        }
+    }
+
+    // null when the case has no audit row, e.g. step debug runs
+    private static String fetchCaseComponent(String runId, int caseId) {
+        String cacheKey = runId + "|" + caseId;
+        String component = CASE_COMPONENTS.getIfPresent(cacheKey);
+        if (component != null) {
+            return component;
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("runId", runId);
+        params.put("caseId", caseId);
+        StringBuilder errorMessage = new StringBuilder();
+        JsonNode result = DynamicDataSourceContextHolder.executeReadOnly(runId,
+                () -> DBUtil.executeLIF(LIFDBStatement.FetchAutoCaseAuditComponent.name(), false, errorMessage, params));
+        if (errorMessage.length() > 0 || result == null || result.isNull()) {
+            return null;
+        }
+        component = result.asText();
+        CASE_COMPONENTS.put(cacheKey, component);
+        return component;
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final long loadedAt = System.currentTimeMillis();
+        // component -> config_key -> upper(profile) -> value, values are read as json like the single key query
+        private final Map<String, Map<String, Map<String, JsonNode>>> globals;
+        private final Map<String, JsonNode> xmlFiles;
+
+        private Snapshot(long version, Map<String, Map<String, Map<String, JsonNode>>> globals, Map<String, JsonNode> xmlFiles) {
+            this.version = version;
+            this.globals = globals;
+            this.xmlFiles = xmlFiles;
+        }
+    }
+}
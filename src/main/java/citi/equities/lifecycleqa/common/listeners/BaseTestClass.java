@@ -7,15 +7,11 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import citi.equities.lifecycleqa.common.entities.AutoCaseAudit;
 import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
 import citi.equities.lifecycleqa.common.enums.AutomationRunMode;
-import citi.equities.lifecycleqa.common.enums.LIFDBStatement;
-import citi.equities.lifecycleqa.common.utils.DBUtil;
+import citi.equities.lifecycleqa.common.helpers.AsyncAuditWriter;
 import citi.equities.lifecycleqa.common.utils.DataTypeUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class BaseTestClass {
     private static final Logger log = LoggerFactory.getLogger(BaseTestClass.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
@@ -66,21 +62,10 @@ public class BaseTestClass {
         elementJson.put("passedSteps", pass);
 
         String runStatus = "passed".equals(stepStatus) ? "PASSED" : "FAILED";
-        Map<String, Object> requestParams = new HashMap<>();
-        requestParams.put("runId", autoCaseAudit.getRunId());
-        requestParams.put("caseId", Integer.parseInt(autoCaseAudit.getCaseId()));
-        requestParams.put("element", DataTypeUtil.processJsonElementForSingleQuotation(elementJson).toString());
-        requestParams.put("runStatus", runStatus);
-
-        log.info("Update AutoCaseAudit with runId={}, caseId={}, runStatus={}",
+        log.info("Queue AutoCaseAudit update with runId={}, caseId={}, runStatus={}",
                 autoCaseAudit.getRunId(), autoCaseAudit.getCaseId(), runStatus);
-
-        StringBuilder errorMessage = new StringBuilder();
-        DBUtil.executeLIF(LIFDBStatement.UpdateAutoCaseAudit.name(), false, errorMessage, requestParams);
-
-        if (errorMessage.length() > 0) {
-            log.error("Failed to update AutoCaseAudit with error {}", errorMessage);
-        }
+        AsyncAuditWriter.submitCaseResult(autoCaseAudit.getRunId(), Integer.parseInt(autoCaseAudit.getCaseId()),
+                DataTypeUtil.processJsonElementForSingleQuotation(elementJson).toString(), runStatus);
     }
 
     protected void updateAutoProgressTestCaseCount(AutoCaseAudit autoCaseAudit, String stepStatus) {
@@ -89,17 +74,7 @@ public class BaseTestClass {
         }
 
         String type = "passed".equals(stepStatus) ? "passes" : "failures";
-        StringBuilder errorMessage = new StringBuilder();
-
-        log.info("Update AutoProgress with runId={}, type={}", autoCaseAudit.getRunId(), type);
-
-        Map<String, Object> params = new HashMap<>();
-        params.put("runId", autoCaseAudit.getRunId());
-        params.put("type", type);
-        DBUtil.executeLIF(LIFDBStatement.UpdateAutoProgress.name(), false, errorMessage, params);
-
-        if (errorMessage.length() > 0) {
-            log.error("Failed to update AutoProgress with error {}", errorMessage);
-        }
+        log.info("Queue AutoProgress update with runId={}, type={}", autoCaseAudit.getRunId(), type);
+        AsyncAuditWriter.submitProgress(autoCaseAudit.getRunId(), type);
     }
 }
@@ -138,12 +138,13 @@ public class CommonAlterListener implements IAlterSuiteListener {
                 ? (ObjectNode) componentNode.get("scenarios")
                 : objectMapper.createObjectNode();
         String runId = suiteBuildJsonObject.has("runId") ? suiteBuildJsonObject.get("runId").asText("") : "";
+        // audits stay in memory for CommonSuiteListener and TestRunFactory instead of being serialized into parameters
+        SuiteGeneratePreparationHelper.registerPreparedScenarios(runId, scenarios);
 
         Map<String, String> suiteParams = new HashMap<>();
         suiteParams.put("runId", suiteParameter.getRunId());
         suiteParams.put("runMode", suiteParameter.getRunMode().name());
         suiteParams.put("component", component);
-        suiteParams.put("scenarioAudits", scenarios.toString());
         suiteParams.put("config", config.toString());
         if (suiteParameter.getGroupId() != null) {
             suiteParams.put("groupId", suiteParameter.getGroupId());
@@ -153,17 +154,20 @@ public class CommonAlterListener implements IAlterSuiteListener {
         newSuite.setName(config.has("suite") ? config.get("suite").asText("") : "");
         newSuite.setParameters(suiteParams);
 
+        // overrides the thread count of testng.xml; every running case holds a worker, also in async request mode
+        int threadCount = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("testng.thread.count",
+                String.valueOf(xmlTest.getThreadCount())).toString());
+
         List<XmlTest> xmlTests = new ArrayList<>();
         scenarios.fieldNames().forEachRemaining(scenarioName -> {
-            JsonNode scenarioData = scenarios.get(scenarioName);
             XmlTest clonedTest = (XmlTest) xmlTest.clone();
             clonedTest.setName(scenarioName);
             Map<String, String> testParams = new HashMap<>();
             testParams.put("runId", runId);
             testParams.put("scenario", scenarioName);
-            testParams.put("audits", scenarioData.toString());
             clonedTest.setParameters(testParams);
             clonedTest.setPreserveOrder(false);
+            clonedTest.setThreadCount(threadCount);
             xmlTests.add(clonedTest);
         });
 
@@ -6,7 +6,10 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import citi.equities.lifecycleqa.common.enums.AutomationRunMode;
 import citi.equities.lifecycleqa.common.enums.DashboardType;
 import citi.equities.lifecycleqa.common.enums.LIFDBStatement;
+import citi.equities.lifecycleqa.common.helpers.AsyncAuditWriter;
+import citi.equities.lifecycleqa.common.helpers.DynamicDataSourceContextHolder;
 import citi.equities.lifecycleqa.common.helpers.ReportHelper;
+import citi.equities.lifecycleqa.common.helpers.SuiteGeneratePreparationHelper;
 import citi.equities.lifecycleqa.common.utils.DBUtil;
 import citi.equities.lifecycleqa.common.utils.DataTypeUtil;
 import org.slf4j.Logger;
@@ -14,7 +17,10 @@ import org.slf4j.LoggerFactory;
 import org.testng.ISuite;
 import org.testng.ISuiteListener;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 public class CommonSuiteListener implements ISuiteListener {
@@ -41,77 +47,82 @@ public class CommonSuiteListener implements ISuiteListener {
     public void onFinish(ISuite suite) {
         Map<String, String> suiteParameters = suite.getXmlSuite().getParameters();
 
+        // case results and progress counts are written in the background, wait for them before closing the run
+        AsyncAuditWriter.flush();
         updateCaseAuditsStatusWhenSuiteFinish(suiteParameters);
         updateRunProgressStatusWhenSuiteFinish(suiteParameters);
         updateGroupProgressWhenSuiteFinish(suiteParameters, suite.getResults().isEmpty());
         uploadDashboardAndUpdatePassrateWhenSuiteFinish(suiteParameters, !suite.getResults().isEmpty());
+        SuiteGeneratePreparationHelper.releasePreparedScenarios(suiteParameters.get("runId"));
         log.info("Finish to Run suite with params {}", suite.getXmlSuite().getParameters());
     }
 
     private void insertCaseAuditsBeforeSuiteStart(Map<String, String> suiteParameters, StringBuilder errorMessage) {
-        StringBuilder sb = new StringBuilder();
         String runId = suiteParameters.get("runId");
         JsonNode config = DataTypeUtil.convertToJsonNode(suiteParameters.getOrDefault("config", "{}"));
-        JsonNode scenarioAudits = DataTypeUtil.convertToJsonNode(suiteParameters.getOrDefault("scenarioAudits", "{}"));
+        JsonNode scenarioAudits = SuiteGeneratePreparationHelper.fetchPreparedScenarios(runId);
+        if (scenarioAudits == null) {
+            scenarioAudits = DataTypeUtil.convertToJsonNode(suiteParameters.getOrDefault("scenarioAudits", "{}"));
+        }
         String region = config.has("region") ? config.get("region").asText("") : "";
         String env = config.has("env") ? config.get("env").asText("") : "";
+        String configString = config.toString();
 
-//        sb.append("delete from auto_case_audit where \"runId\"='").append(runId).append("';\n");
-
+        List<ObjectNode> audits = new ArrayList<>();
         if (scenarioAudits.isObject()) {
-            scenarioAudits.fieldNames().forEachRemaining(key -> {
-                JsonNode auditsArray = scenarioAudits.get(key);
+            scenarioAudits.elements().forEachRemaining(auditsArray -> {
                 if (auditsArray != null && auditsArray.isArray()) {
                     auditsArray.forEach(finalAutoCaseAudit -> {
                         if (finalAutoCaseAudit.isObject()) {
-                            ObjectNode audit = (ObjectNode) finalAutoCaseAudit;
-                            String summary = audit.has("summary") ? audit.get("summary").asText("").replace("'", "''") : "";
-                            String suite = audit.has("suite") ? audit.get("suite").asText("").replace("'", "''") : "";
-                            String scenario = audit.has("scenario") ? audit.get("scenario").asText("").replace("'", "''") : "";
-                            String runStatus = audit.has("runStatus") ? audit.get("runStatus").asText("") : "";
-                            JsonNode scriptData = DataTypeUtil.processJsonElementForSingleQuotation(
-                                    audit.has("caseScript") && audit.get("caseScript").isArray()
-                                            ? audit.get("caseScript")
-                                            : (audit.has("templateScript") && audit.get("templateScript").isArray()
-                                            ? audit.get("templateScript")
-                                            : objectMapper.createArrayNode())
-                            );
-                            String runMode = audit.has("runMode") ? audit.get("runMode").asText("") : "";
-                            JsonNode variables = DataTypeUtil.processJsonElementForSingleQuotation(
-                                    audit.has("variables") && audit.get("variables").isObject()
-                                            ? audit.get("variables")
-                                            : objectMapper.createObjectNode()
-                            );
-                            int caseId = audit.has("caseId") ? audit.get("caseId").asInt(0) : 0;
-                            String label = audit.has("label") ? audit.get("label").asText("").replace("'", "''") : "";
-                            String issueKey = audit.has("issueKey") ? audit.get("issueKey").asText("").replace("'", "''") : "";
-                            JsonNode testData = DataTypeUtil.processJsonElementForSingleQuotation(
-                                    audit.has("testData") && audit.get("testData").isObject()
-                                            ? audit.get("testData")
-                                            : objectMapper.createObjectNode()
-                            );
-                            JsonNode configProcessed = DataTypeUtil.processJsonElementForSingleQuotation(config);
-
-                            sb.append("insert into auto_case_audit (\"runId\",suite,scenario,\"issueKey\",summary,\"runStatus\",script,\"testData\",element,config,")
-                                    .append("\"runMode\",\"caseId\",label,region,env,variables) ")
-                                    .append("values('").append(runId).append("','").append(suite).append("','").append(scenario).append("','")
-                                    .append(issueKey).append("','").append(summary).append("','").append(runStatus).append("',")
-                                    .append("'").append(scriptData.toString()).append("'::jsonb, '").append(testData.toString()).append("'::jsonb,")
-                                    .append("'{}'::jsonb,'").append(configProcessed.toString()).append("'::jsonb,'").append(runMode).append("',")
-                                    .append(caseId).append(",'").append(label).append("','").append(region).append("','").append(env).append("',")
-                                    .append("'").append(variables.toString()).append("');\n");
+                            audits.add((ObjectNode) finalAutoCaseAudit);
                         }
                     });
                 }
             });
         }
 
-        DBUtil.executeLIF(sb.toString(), true, errorMessage);
+        // rows are built one by one while the batch is sent, so only the current chunk is serialized
+        Iterator<Map<String, Object>> rows = audits.stream()
+                .map(audit -> buildCaseAuditRow(runId, region, env, configString, audit))
+                .iterator();
+        DBUtil.executeLIFBatch(LIFDBStatement.InsertAutoCaseAuditRow.name(), rows, errorMessage);
         if (errorMessage.length() > 0) {
             log.error("Failed to insert CaseAudits Before Suite Start with error {}", errorMessage);
         }
     }
 
+    private Map<String, Object> buildCaseAuditRow(String runId, String region, String env, String config, ObjectNode audit) {
+        JsonNode script = audit.has("caseScript") && audit.get("caseScript").isArray()
+                ? audit.get("caseScript")
+                : (audit.has("templateScript") && audit.get("templateScript").isArray()
+                ? audit.get("templateScript")
+                : objectMapper.createArrayNode());
+        JsonNode variables = audit.has("variables") && audit.get("variables").isObject()
+                ? audit.get("variables")
+                : objectMapper.createObjectNode();
+        JsonNode testData = audit.has("testData") && audit.get("testData").isObject()
+                ? audit.get("testData")
+                : objectMapper.createObjectNode();
+
+        Map<String, Object> row = new HashMap<>();
+        row.put("runId", runId);
+        row.put("suite", audit.has("suite") ? audit.get("suite").asText("") : "");
+        row.put("scenario", audit.has("scenario") ? audit.get("scenario").asText("") : "");
+        row.put("issueKey", audit.has("issueKey") ? audit.get("issueKey").asText("") : "");
+        row.put("summary", audit.has("summary") ? audit.get("summary").asText("") : "");
+        row.put("runStatus", audit.has("runStatus") ? audit.get("runStatus").asText("") : "");
+        row.put("script", script.toString());
+        row.put("testData", testData.toString());
+        row.put("config", config);
+        row.put("runMode", audit.has("runMode") ? audit.get("runMode").asText("") : "");
+        row.put("caseId", audit.has("caseId") ? audit.get("caseId").asInt(0) : 0);
+        row.put("label", audit.has("label") ? audit.get("label").asText("") : "");
+        row.put("region", region);
+        row.put("env", env);
+        row.put("variables", variables.toString());
+        return row;
+    }
+
     private void insertRunProgressBeforeSuiteStart(Map<String, String> suiteParameters, StringBuilder errorMessage) {
         String runMode = suiteParameters.get("runMode");
         if (runMode != null && runMode.equalsIgnoreCase(AutomationRunMode.TEST.name())) {
@@ -147,6 +158,7 @@ public class CommonSuiteListener implements ISuiteListener {
                 true,
                 errorMessage
         );
+        DynamicDataSourceContextHolder.markWrite(runId);
         if (errorMessage.length() > 0) {
             log.error("Failed to update CaseAudits Status When Suite finish with error {}", errorMessage);
         }
@@ -0,0 +1,237 @@
+package citi.equities.lifecycleqa.common.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.ibatis.datasource.DataSourceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MyBatis 数据源工厂，基于 commons-dbcp2 连接池
+ * 每个数据库单独配置连接池大小、校验和泄漏检测（见 mybatis.xml 中的 pool.* 属性），并记录获取连接的等待时间
+ */
+public class DBCPDataSourceFactory implements DataSourceFactory {
+    private static final Logger log = LoggerFactory.getLogger(DBCPDataSourceFactory.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // wait time histogram upper bounds in ms, the last bucket counts everything above
+    private static final long[] WAIT_BUCKETS_MILLIS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+    private static final Map<String, MeteredDataSource> DATA_SOURCES = new ConcurrentHashMap<>();
+
+    private DataSource dataSource;
+
+    @Override
+    public void setProperties(Properties properties) {
+        BasicDataSource basicDataSource = new BasicDataSource();
+        basicDataSource.setDriverClassName(properties.getProperty("driver"));
+        basicDataSource.setUrl(properties.getProperty("url"));
+        basicDataSource.setUsername(properties.getProperty("username"));
+        basicDataSource.setPassword(properties.getProperty("password"));
+
+        // sizing
+        basicDataSource.setInitialSize(intProperty(properties, "initialSize", 2));
+        basicDataSource.setMaxTotal(intProperty(properties, "maxTotal", 20));
+        basicDataSource.setMaxIdle(intProperty(properties, "maxIdle", 10));
+        basicDataSource.setMinIdle(intProperty(properties, "minIdle", 2));
+        basicDataSource.setMaxWait(Duration.ofMillis(intProperty(properties, "maxWaitMillis", 30000)));
+
+        // prepared statements are cached per connection, step sql is parameterized so the same text repeats
+        basicDataSource.setPoolPreparedStatements(true);
+        basicDataSource.setMaxOpenPreparedStatements(intProperty(properties, "maxOpenPreparedStatements", 100));
+        if (basicDataSource.getUrl() != null && basicDataSource.getUrl().startsWith("jdbc:postgresql")) {
+            // bind strings as untyped like the former literals, so '{{id}}' still compares against numeric columns
+            basicDataSource.addConnectionProperty("stringtype", "unspecified");
+            // jdbc batches are sent as multi-row inserts
+            basicDataSource.addConnectionProperty("reWriteBatchedInserts", "true");
+        }
+
+        // validation
+        basicDataSource.setValidationQuery(properties.getProperty("validationQuery", "select 1"));
+        basicDataSource.setValidationQueryTimeout(Duration.ofSeconds(intProperty(properties, "validationTimeoutSeconds", 5)));
+        basicDataSource.setTestOnBorrow(Boolean.parseBoolean(properties.getProperty("testOnBorrow", "false")));
+        basicDataSource.setTestWhileIdle(true);
+        basicDataSource.setDurationBetweenEvictionRuns(Duration.ofSeconds(intProperty(properties, "evictionSeconds", 30)));
+        basicDataSource.setMinEvictableIdle(Duration.ofSeconds(intProperty(properties, "minEvictableIdleSeconds", 300)));
+
+        // leak detection, connections borrowed longer than leakTimeoutSeconds are reclaimed and the borrow stack is logged
+        int leakTimeoutSeconds = intProperty(properties, "leakTimeoutSeconds", 300);
+        if (leakTimeoutSeconds > 0) {
+            basicDataSource.setRemoveAbandonedOnBorrow(true);
+            basicDataSource.setRemoveAbandonedOnMaintenance(true);
+            basicDataSource.setRemoveAbandonedTimeout(Duration.ofSeconds(leakTimeoutSeconds));
+            basicDataSource.setLogAbandoned(true);
+            basicDataSource.setAbandonedUsageTracking(false);
+        }
+
+        String poolName = properties.getProperty("poolName", basicDataSource.getUrl());
+        MeteredDataSource metered = new MeteredDataSource(poolName, basicDataSource);
+        MeteredDataSource previous = DATA_SOURCES.put(poolName, metered);
+        if (previous != null) {
+            previous.close();
+        }
+        log.info("Create DBCP pool {} with maxTotal {}, maxIdle {}, minIdle {}", poolName,
+                basicDataSource.getMaxTotal(), basicDataSource.getMaxIdle(), basicDataSource.getMinIdle());
+        this.dataSource = metered;
+    }
+
+    @Override
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public static ObjectNode fetchPoolMetrics() {
+        ObjectNode result = objectMapper.createObjectNode();
+        DATA_SOURCES.forEach((name, metered) -> result.set(name, metered.fetchMetrics()));
+        return result;
+    }
+
+    public static void closePool(String poolName) {
+        MeteredDataSource metered = DATA_SOURCES.remove(poolName);
+        if (metered != null) {
+            metered.close();
+        }
+    }
+
+    public static void closeAll() {
+        DATA_SOURCES.values().forEach(MeteredDataSource::close);
+        DATA_SOURCES.clear();
+    }
+
+    private static int intProperty(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid pool property {}={}, use default {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static class MeteredDataSource implements DataSource {
+        private final String poolName;
+        private final BasicDataSource delegate;
+        private final LongAdder[] waitHistogram = new LongAdder[WAIT_BUCKETS_MILLIS.length + 1];
+        private final LongAdder borrowCount = new LongAdder();
+        private final LongAdder borrowFailures = new LongAdder();
+        private final LongAdder totalWaitMillis = new LongAdder();
+        private final AtomicLong maxWaitMillis = new AtomicLong();
+
+        private MeteredDataSource(String poolName, BasicDataSource delegate) {
+            this.poolName = poolName;
+            this.delegate = delegate;
+            for (int i = 0; i < waitHistogram.length; i++) {
+                waitHistogram[i] = new LongAdder();
+            }
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            long start = System.nanoTime();
+            try {
+                Connection connection = delegate.getConnection();
+                recordWait(start);
+                return connection;
+            } catch (SQLException e) {
+                borrowFailures.increment();
+                log.error("Failed to borrow connection from pool {} (active {}, idle {}): {}",
+                        poolName, delegate.getNumActive(), delegate.getNumIdle(), e.getMessage());
+                throw e;
+            }
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLFeatureNotSupportedException("Pool " + poolName + " only uses its configured credentials");
+        }
+
+        private void recordWait(long startNanos) {
+            long waitMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+            borrowCount.increment();
+            totalWaitMillis.add(waitMillis);
+            maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+            int bucket = 0;
+            while (bucket < WAIT_BUCKETS_MILLIS.length && waitMillis > WAIT_BUCKETS_MILLIS[bucket]) {
+                bucket++;
+            }
+            waitHistogram[bucket].increment();
+        }
+
+        private ObjectNode fetchMetrics() {
+            ObjectNode item = objectMapper.createObjectNode();
+            item.put("active", delegate.getNumActive());
+            item.put("idle", delegate.getNumIdle());
+            item.put("maxTotal", delegate.getMaxTotal());
+            item.put("borrowCount", borrowCount.sum());
+            item.put("borrowFailures", borrowFailures.sum());
+            long count = borrowCount.sum();
+            item.put("avgWaitMillis", count == 0 ? 0L : totalWaitMillis.sum() / count);
+            item.put("maxWaitMillis", maxWaitMillis.get());
+            ObjectNode histogram = objectMapper.createObjectNode();
+            for (int i = 0; i < WAIT_BUCKETS_MILLIS.length; i++) {
+                histogram.put("le" + WAIT_BUCKETS_MILLIS[i], waitHistogram[i].sum());
+            }
+            histogram.put("gt" + WAIT_BUCKETS_MILLIS[WAIT_BUCKETS_MILLIS.length - 1], waitHistogram[WAIT_BUCKETS_MILLIS.length].sum());
+            item.set("waitMillisHistogram", histogram);
+            return item;
+        }
+
+        private void close() {
+            try {
+                delegate.close();
+            } catch (SQLException e) {
+                log.warn("Failed to close pool {}: {}", poolName, e.getMessage());
+            }
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return delegate.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            delegate.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            delegate.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return delegate.getLoginTimeout();
+        }
+
+        @Override
+        public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return delegate.getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return iface.isInstance(delegate) ? iface.cast(delegate) : delegate.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+        }
+    }
+}
@@ -5,28 +5,60 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.NullNode;
 import citi.equities.lifecycleqa.common.config.InitialConfig;
+import citi.equities.lifecycleqa.common.entities.ParameterizedSql;
+import citi.equities.lifecycleqa.common.entities.RetryPolicy;
 import citi.equities.lifecycleqa.common.entities.SqlObject;
 import citi.equities.lifecycleqa.common.entities.StopCondition;
 import citi.equities.lifecycleqa.common.enums.LIFDBStatement;
+import citi.equities.lifecycleqa.common.helpers.DBWaitHelper;
+import citi.equities.lifecycleqa.common.helpers.DynamicDataSourceContextHolder;
+import citi.equities.lifecycleqa.common.helpers.RetrySchedulerHelper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import net.sf.jsqlparser.expression.LongValue;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.statement.Statement;
 import net.sf.jsqlparser.statement.select.PlainSelect;
 import net.sf.jsqlparser.statement.select.Select;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 public class DBUtil {
     private static final Logger log = LoggerFactory.getLogger(DBUtil.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    private static final Pattern CONTROL_CHARS = Pattern.compile("[\\x00-\\x09\\x0B\\x0C\\x0E-\\x1F\\x7F]");
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+    private static final Pattern LINE_COMMENT = Pattern.compile("--.*$");
+    private static final Pattern BLOCK_COMMENT = Pattern.compile("/\\*.*?\\*/");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    // numbers after limit/top decide rowNumber, so they stay in the template
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w$.])(?<!limit )(?<!top )\\d+(?:\\.\\d+)?(?![\\w.])");
+
+    // sql template (literals replaced by '?') -> parsed metadata, the bound values never change isSelect/row/column
+    private static final Cache<String, SqlObject> SQL_OBJECT_CACHE = Caffeine.newBuilder()
+            .maximumSize(2000)
+            .build();
+
     public static SqlObject analyzeSqlWithIsSelectRowColumnNumber(String sql) {
+        if (sql == null) {
+            return new SqlObject(false, -1, -1);
+        }
+        String sanitizedSql = sanitizeSql(sql);
+        String template = NUMBER_LITERAL.matcher(STRING_LITERAL.matcher(sanitizedSql).replaceAll("'?'")).replaceAll("0");
+        return SQL_OBJECT_CACHE.get(template, key -> parseSqlObject(sanitizedSql, sql));
+    }
+
+    private static SqlObject parseSqlObject(String sanitizedSql, String sql) {
         try {
-            String sanitizedSql = sanitizeSql(sql);
             Statement statement = CCJSqlParserUtil.parse(sanitizedSql);
             if (statement instanceof Select) {
                 Select select = (Select) statement;
@@ -74,67 +106,100 @@ public class DBUtil {
 
     public static String buildSqlSessionManagerName(String dbType, String region, String env) {
         log.info("build profileName DbType={}, region={}, env={}", dbType, region, env);
-        String endStr;
+        return (region + env + "-SendStr-" + buildDBName(dbType)).toLowerCase();
+    }
+
+    // database name used in the ehapi.<db>.<profile>.* connection config
+    public static String buildDBName(String dbType) {
         switch (dbType.toUpperCase()) {
             case "IGNITE":
-                endStr = "IGNITE";
-                break;
+                return "IGNITE";
             case "CFIM":
-                endStr = "CFIM";
-                break;
+                return "CFIM";
             default:
-                endStr = "DRMS";
+                return "DRMS";
         }
-        return (region + env + "-SendStr-" + endStr).toLowerCase();
     }
 
     public static JsonNode executeSQL(SqlSessionManager sqlSessionManager, String sql,
                                        StringBuilder errorMessage, int retryNumber,
                                        int intervalSeconds, StopCondition stopCondition) {
-        int attempts = 1;
-        SqlObject sqlObject = analyzeSqlWithIsSelectRowColumnNumber(sql);
+        return executeSQL(sqlSessionManager, sql, errorMessage,
+                RetryPolicy.fixed(retryNumber, intervalSeconds * 1000L), stopCondition);
+    }
 
-        while (attempts <= retryNumber) {
-            log.info("Start to execute sql '{}' with times {}, retryNumber {}, intervalSeconds {}",
-                    sql, attempts, retryNumber, intervalSeconds);
+    public static JsonNode executeSQL(SqlSessionManager sqlSessionManager, String sql,
+                                       StringBuilder errorMessage, RetryPolicy retryPolicy,
+                                       StopCondition stopCondition) {
+        return executeSQL(sqlSessionManager, sql, analyzeSqlWithIsSelectRowColumnNumber(sql), errorMessage, retryPolicy, stopCondition);
+    }
 
-            try (SqlSession session = sqlSessionManager.openSession()) {
-                List<Object> result = session.selectList(LIFDBStatement.DynamicSQL.name(),
-                        Collections.singletonMap("sql", sql));
+    // for callers that already analyzed the sql
+    public static JsonNode executeSQL(SqlSessionManager sqlSessionManager, String sql, SqlObject sqlObject,
+                                       StringBuilder errorMessage, RetryPolicy retryPolicy,
+                                       StopCondition stopCondition) {
+        return executeSQL(sqlSessionManager, LIFDBStatement.DynamicSQL.name(), sql,
+                Collections.singletonMap("sql", sql), sqlObject, errorMessage, retryPolicy, stopCondition);
+    }
 
-                if (result == null || result.isEmpty()) {
-                    result = new ArrayList<>();
-                }
+    // step sql with placeholders compiled into bind parameters, see PlaceholderReplaceHelper.compileSqlWithBindParameters
+    public static JsonNode executeSQL(SqlSessionManager sqlSessionManager, ParameterizedSql parameterizedSql,
+                                       SqlObject sqlObject, StringBuilder errorMessage, RetryPolicy retryPolicy,
+                                       StopCondition stopCondition) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("sql", parameterizedSql.getMapperSql());
+        params.put("params", parameterizedSql.getParams());
+        String sqlForLog = parameterizedSql.getParams().isEmpty() ? parameterizedSql.getSql()
+                : parameterizedSql.getSql() + " -- params " + parameterizedSql.getParams();
+        return executeSQL(sqlSessionManager, LIFDBStatement.DynamicPreparedSQL.name(), sqlForLog,
+                params, sqlObject, errorMessage, retryPolicy, stopCondition);
+    }
 
-                if (attempts == retryNumber) {
-                    log.info("Finish sql '{}' with retryNumber {}, attempts {}, result: {}",
-                            sql, retryNumber, attempts, result.toString().substring(0, Math.min(100, result.toString().length())));
-                    return buildJsonElementAfterExecute(result, sqlObject, errorMessage);
-                } else {
-                    if (!result.isEmpty() && stopCondition != null && stopCondition.evaluateForDB(result)) {
-                        log.info("Finish sql '{}' with retryNumber {}, attempts {}, meet stopCondition",
-                                sql, retryNumber, attempts);
-                        return buildJsonElementAfterExecute(result, sqlObject, errorMessage);
-                    }
-                }
-            } catch (Exception e) {
-                String errMsg = e.getMessage() + " with sql : '" + sql + "'";
-                DataTypeUtil.appendErrorMessage(errorMessage, errMsg);
-                log.error(errMsg);
-            }
+    private static JsonNode executeSQL(SqlSessionManager sqlSessionManager, String statement, String sql,
+                                       Map<String, Object> params, SqlObject sqlObject, StringBuilder errorMessage,
+                                       RetryPolicy retryPolicy, StopCondition stopCondition) {
+        int retryNumber = retryPolicy.getMaxAttempts();
 
-            attempts++;
-            if (attempts <= retryNumber) {
-                try {
-                    Thread.sleep(intervalSeconds * 1000L);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+        List<Object> finalResult;
+        if (stopCondition != null && retryNumber > 1 && sqlObject.isSelect()) {
+            // selects waiting on a condition are coalesced per sql and can be woken by NOTIFY instead of the interval
+            finalResult = DBWaitHelper.waitForResult(sqlSessionManager, statement + "|" + sql,
+                    roundError -> selectOnce(sqlSessionManager, statement, sql, params, roundError),
+                    result -> !result.isEmpty() && stopCondition.evaluateForDB(result),
+                    retryPolicy, errorMessage);
+        } else if (sqlObject.isSelect() && stopCondition == null) {
+            // nothing inspects the rows, so they are shaped while the cursor reads them instead of listed first;
+            // like the list path, every attempt runs when there is no stop condition
+            SelectResultCollector collector = RetrySchedulerHelper.executeWithRetry("sql", attempts -> {
+                log.info("Start to execute sql '{}' with times {}, retryNumber {}, intervalSeconds {}",
+                        sql, attempts, retryNumber, retryPolicy.getInitialIntervalMillis() / 1000);
+                SelectResultCollector attempt = new SelectResultCollector(sqlObject);
+                return streamStatement(sqlSessionManager, statement, sql, params, attempt, errorMessage) < 0 ? null : attempt;
+            }, result -> true, throwable -> false, retryPolicy);
+            if (collector == null) {
+                log.error("All {} attempts failed for sql '{}'", retryNumber, sql);
+                return NullNode.getInstance();
             }
+            log.info("Finish sql '{}' with retryNumber {}, {} rows", sql, retryNumber, collector.count);
+            return collector.finish(errorMessage);
+        } else {
+            // null result means the attempt failed with an exception
+            finalResult = RetrySchedulerHelper.executeWithRetry("sql", attempts -> {
+                log.info("Start to execute sql '{}' with times {}, retryNumber {}, intervalSeconds {}",
+                        sql, attempts, retryNumber, retryPolicy.getInitialIntervalMillis() / 1000);
+                return selectOnce(sqlSessionManager, statement, sql, params, errorMessage);
+            }, result -> result == null || result.isEmpty() || stopCondition == null || !stopCondition.evaluateForDB(result),
+                    throwable -> false, retryPolicy);
         }
 
-        log.error("All {} attempts failed for sql '{}'", retryNumber, sql);
-        return NullNode.getInstance();
+        if (finalResult == null) {
+            log.error("All {} attempts failed for sql '{}'", retryNumber, sql);
+            return NullNode.getInstance();
+        }
+
+        log.info("Finish sql '{}' with retryNumber {}, result: {}",
+                sql, retryNumber, finalResult.toString().substring(0, Math.min(100, finalResult.toString().length())));
+        return buildJsonElementAfterExecute(finalResult, sqlObject, errorMessage);
     }
 
     public static JsonNode executeLIF(String statementOrSql, boolean isSql, StringBuilder errorMessage) {
@@ -159,34 +224,155 @@ public class DBUtil {
             );
         }
 
+        // writes always go to the primary, even inside a read only context
         if (isSql) {
+            if (!analyzeSqlWithIsSelectRowColumnNumber(statementOrSql).isSelect()) {
+                return DynamicDataSourceContextHolder.executeOnPrimary(
+                        () -> executeSQL(sqlSessionManager, statementOrSql, errorMessage, 1, 1, null));
+            }
             return executeSQL(sqlSessionManager, statementOrSql, errorMessage, 1, 1, null);
-        } else {
-            try (SqlSession session = sqlSessionManager.openSession()) {
-                log.debug("执行 MyBatis Statement: {} with params: {}", statementOrSql, params);
-                List<Object> result = session.selectList(statementOrSql, params);
-                if (result == null || result.isEmpty()) {
-                    result = new ArrayList<>();
+        }
+        LIFDBStatement statement = LIFDBStatement.fromString(statementOrSql);
+        if (!statement.isSelect()) {
+            JsonNode result = DynamicDataSourceContextHolder.executeOnPrimary(
+                    () -> executeLIFStatement(sqlSessionManager, statementOrSql, statement, errorMessage, params));
+            // reads of this run stay on the primary until the replica has the write
+            if (params != null && params.get("runId") != null) {
+                DynamicDataSourceContextHolder.markWrite(params.get("runId").toString());
+            }
+            return result;
+        }
+        return executeLIFStatement(sqlSessionManager, statementOrSql, statement, errorMessage, params);
+    }
+
+    private static JsonNode executeLIFStatement(SqlSessionManager sqlSessionManager, String statementOrSql,
+                                                LIFDBStatement statement, StringBuilder errorMessage,
+                                                Map<String, Object> params) {
+        if (statement.isSelect()) {
+            SelectResultCollector collector = new SelectResultCollector(
+                    new SqlObject(true, statement.getRowNumber(), statement.getColumnNumber()));
+            if (streamStatement(sqlSessionManager, statementOrSql, statementOrSql, params, collector, errorMessage) < 0) {
+                return NullNode.getInstance();
+            }
+            return collector.finish(errorMessage);
+        }
+        try (SqlSession session = sqlSessionManager.openSession()) {
+            log.debug("执行 MyBatis Statement: {} with params: {}", statementOrSql, params);
+            List<Object> result = session.selectList(statementOrSql, params);
+            if (result == null || result.isEmpty()) {
+                result = new ArrayList<>();
+            }
+            if (statement.isBaseUrlChange()) {
+                InitialConfig.invalidateBaseUrlIndex();
+            }
+            SqlObject sqlObject = new SqlObject(statement.isSelect(), statement.getRowNumber(), statement.getColumnNumber());
+            return buildJsonElementAfterExecute(result, sqlObject, errorMessage);
+        } catch (Exception e) {
+            String errMsg = e.getMessage() + " with statement: " + statementOrSql;
+            DataTypeUtil.appendErrorMessage(errorMessage, errMsg);
+            log.error(errMsg);
+            return NullNode.getInstance();
+        }
+    }
+
+    // null when the select failed, the error is appended to errorMessage
+    private static List<Object> selectOnce(SqlSessionManager sqlSessionManager, String statement, String sql,
+                                           Map<String, Object> params, StringBuilder errorMessage) {
+        try (SqlSession session = sqlSessionManager.openSession()) {
+            List<Object> result = session.selectList(statement, params);
+            return result == null ? new ArrayList<>() : result;
+        } catch (Exception e) {
+            String errMsg = e.getMessage() + " with sql : '" + sql + "'";
+            DataTypeUtil.appendErrorMessage(errorMessage, errMsg);
+            log.error(errMsg);
+            return null;
+        }
+    }
+
+    /**
+     * Streams the rows of a LIF mapper select to rowConsumer through a MyBatis cursor, so large results are
+     * never held as a list of maps plus an ArrayNode. Rows are fetched pool.fetchSize at a time.
+     * @return number of rows consumed, or -1 when the query failed
+     */
+    public static int streamLIF(String statement, Map<String, Object> params,
+                                Consumer<JsonNode> rowConsumer, StringBuilder errorMessage) {
+        return streamStatement(InitialConfig.getLIFSqlSessionManager(), statement, statement, params,
+                row -> rowConsumer.accept(DataTypeUtil.convertToJsonNode(row)), errorMessage);
+    }
+
+    // rows are passed on as mybatis returns them
+    private static int streamStatement(SqlSessionManager sqlSessionManager, String statement, String sqlForLog,
+                                       Map<String, Object> params, Consumer<Object> rowConsumer,
+                                       StringBuilder errorMessage) {
+        log.info("Start to stream {}", sqlForLog);
+        int count = 0;
+        // postgres only fetches in chunks inside a transaction, the session is opened without autocommit
+        try (SqlSession session = sqlSessionManager.openSession(false);
+             Cursor<Object> cursor = session.selectCursor(statement, params)) {
+            for (Object row : cursor) {
+                rowConsumer.accept(row);
+                count++;
+            }
+            log.info("Finish to stream {} with {} rows", sqlForLog, count);
+            return count;
+        } catch (Exception e) {
+            String errMsg = e.getMessage() + " with stream statement: " + sqlForLog + " after " + count + " rows";
+            DataTypeUtil.appendErrorMessage(errorMessage, errMsg);
+            log.error(errMsg);
+            return -1;
+        }
+    }
+
+    /**
+     * Runs a mapper insert/update once per row in a JDBC batch on the LIF database, flushing every
+     * lif.batch.size rows so memory is bounded by the chunk instead of the whole row set.
+     * All chunks are committed together at the end.
+     * @return number of rows sent, or -1 when the batch failed and was rolled back
+     */
+    public static int executeLIFBatch(String statement, Iterator<Map<String, Object>> rows, StringBuilder errorMessage) {
+        return DynamicDataSourceContextHolder.executeOnPrimary(() -> executeLIFBatchOnPrimary(statement, rows, errorMessage));
+    }
+
+    private static int executeLIFBatchOnPrimary(String statement, Iterator<Map<String, Object>> rows, StringBuilder errorMessage) {
+        int chunkSize = Integer.parseInt(InitialConfig.INFO_CONFIG.getOrDefault("lif.batch.size", "500").toString());
+        SqlSessionManager sqlSessionManager = InitialConfig.getLIFSqlSessionManager();
+        Set<String> runIds = new HashSet<>();
+        int count = 0;
+        try (SqlSession session = sqlSessionManager.openSession(ExecutorType.BATCH, false)) {
+            try {
+                while (rows.hasNext()) {
+                    Map<String, Object> row = rows.next();
+                    if (row.get("runId") != null) {
+                        runIds.add(row.get("runId").toString());
+                    }
+                    session.insert(statement, row);
+                    count++;
+                    if (count % chunkSize == 0) {
+                        session.flushStatements();
+                        log.info("Flush {} rows for {}", count, statement);
+                    }
                 }
-                LIFDBStatement statement = LIFDBStatement.fromString(statementOrSql);
-                SqlObject sqlObject = new SqlObject(statement.isSelect(), statement.getRowNumber(), statement.getColumnNumber());
-                return buildJsonElementAfterExecute(result, sqlObject, errorMessage);
+                session.flushStatements();
+                session.commit();
+                runIds.forEach(DynamicDataSourceContextHolder::markWrite);
+                log.info("Finish batch {} with {} rows", statement, count);
+                return count;
             } catch (Exception e) {
-                String errMsg = e.getMessage() + " with statement: " + statementOrSql;
+                session.rollback();
+                String errMsg = e.getMessage() + " with batch statement: " + statement + " after " + count + " rows";
                 DataTypeUtil.appendErrorMessage(errorMessage, errMsg);
                 log.error(errMsg);
-                return NullNode.getInstance();
+                return -1;
             }
         }
     }
 
     private static String sanitizeSql(String sql) {
-        return sql.toLowerCase().trim()
-                .replaceAll("[\\x00-\\x09\\x0B\\x0C\\x0E-\\x1F\\x7F]", "")
-                .replaceAll("\\s+", " ")
-                .replaceAll("--.*$", "")
-                .replaceAll("/\\*.*?\\*/", "")
-                .replace("set chained off", "");
+        String result = CONTROL_CHARS.matcher(sql.toLowerCase().trim()).replaceAll("");
+        result = WHITESPACES.matcher(result).replaceAll(" ");
+        result = LINE_COMMENT.matcher(result).replaceAll("");
+        result = BLOCK_COMMENT.matcher(result).replaceAll("");
+        return result.replace("set chained off", "");
     }
 
     private static JsonNode fetchFinalJsonElementFromSelectResultAndRowColumnNumber(
@@ -213,22 +399,14 @@ public class DBUtil {
         }
 
         if (rowNumber == 1) {
-            Object first = selectResult.get(0);
-            if (columnNumber == 1 && first instanceof Map) {
-                Collection<?> values = ((Map<?, ?>) first).values();
-                return DataTypeUtil.convertToJsonNode(values.iterator().next());
-            } else if (columnNumber == 1 && first instanceof List) {
-                return DataTypeUtil.convertToJsonNode(((List<?>) first).get(0));
-            }
-            return DataTypeUtil.convertToJsonNode(first);
+            return convertSingleRow(selectResult.get(0), columnNumber);
         }
 
         if (columnNumber == 1) {
             ArrayNode arrayNode = objectMapper.createArrayNode();
             for (Object item : selectResult) {
                 if (item instanceof Map) {
-                    Collection<?> values = ((Map<?, ?>) item).values();
-                    arrayNode.add(DataTypeUtil.convertToJsonNode(values.iterator().next()));
+                    arrayNode.add(convertFirstColumn((Map<?, ?>) item));
                 }
             }
             return arrayNode;
@@ -237,6 +415,20 @@ public class DBUtil {
         return DataTypeUtil.listToJsonArray((List<?>) selectResult);
     }
 
+    private static JsonNode convertSingleRow(Object row, int columnNumber) {
+        if (columnNumber == 1 && row instanceof Map) {
+            return convertFirstColumn((Map<?, ?>) row);
+        } else if (columnNumber == 1 && row instanceof List) {
+            return DataTypeUtil.convertToJsonNode(((List<?>) row).get(0));
+        }
+        return DataTypeUtil.convertToJsonNode(row);
+    }
+
+    private static JsonNode convertFirstColumn(Map<?, ?> row) {
+        Iterator<?> values = row.values().iterator();
+        return values.hasNext() ? DataTypeUtil.convertToJsonNode(values.next()) : NullNode.getInstance();
+    }
+
     private static JsonNode buildJsonElementAfterExecute(List<Object> variablesDBResult,
                                                           SqlObject sqlObject,
                                                           StringBuilder errorMessage) {
@@ -258,4 +450,56 @@ public class DBUtil {
             return NullNode.getInstance();
         }
     }
+
+    /**
+     * Shapes select rows like fetchFinalJsonElementFromSelectResultAndRowColumnNumber while the cursor reads them,
+     * so only the json result is held instead of a list of maps plus its json copy.
+     */
+    private static class SelectResultCollector implements Consumer<Object> {
+        private final SqlObject sqlObject;
+        private final ArrayNode rows = objectMapper.createArrayNode();
+        private Object first;
+        private int count;
+        private boolean allNull = true;
+
+        private SelectResultCollector(SqlObject sqlObject) {
+            this.sqlObject = sqlObject;
+        }
+
+        @Override
+        public void accept(Object row) {
+            if (count == 0) {
+                first = row;
+            }
+            count++;
+            allNull = allNull && row == null;
+            // a single row result only needs the first row, the count still checks the row number
+            if (sqlObject.getRowNumber() == 1) {
+                return;
+            }
+            if (sqlObject.getColumnNumber() != 1) {
+                rows.add(DataTypeUtil.convertToJsonNode(row));
+            } else if (row instanceof Map) {
+                rows.add(convertFirstColumn((Map<?, ?>) row));
+            }
+        }
+
+        private JsonNode finish(StringBuilder errorMessage) {
+            int rowNumber = sqlObject.getRowNumber();
+            if (count == 0) {
+                log.info("Empty select RESULT");
+                return NullNode.getInstance();
+            }
+            if (rowNumber != count && rowNumber != -1) {
+                String errMsg = "Invalid Match between rowNumber: " + rowNumber + " and the size of selectResult: " + count;
+                DataTypeUtil.appendErrorMessage(errorMessage, errMsg);
+                log.error(errMsg);
+                return NullNode.getInstance();
+            }
+            if (allNull) {
+                return sqlObject.getColumnNumber() == 1 ? NullNode.getInstance() : objectMapper.createArrayNode();
+            }
+            return rowNumber == 1 ? convertSingleRow(first, sqlObject.getColumnNumber()) : rows;
+        }
+    }
 }
@@ -9,6 +9,11 @@ import com.github.f4b6a3.ulid.UlidCreator;
 import citi.equities.lifecycleqa.common.entities.SuiteParameter;
 import citi.equities.lifecycleqa.common.enums.LIFDBStatement;
 import citi.equities.lifecycleqa.common.enums.Profile;
+import citi.equities.lifecycleqa.common.helpers.EndpointLatencyHelper;
+import citi.equities.lifecycleqa.common.helpers.HttpClientPoolHelper;
+import citi.equities.lifecycleqa.common.helpers.ServiceGuardHelper;
+import citi.equities.lifecycleqa.common.helpers.VariableCacheHelper;
+import citi.equities.lifecycleqa.common.utils.DBCPDataSourceFactory;
 import citi.equities.lifecycleqa.common.utils.DBUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -190,6 +195,36 @@ public class EHAPIController {
         return result;
     }
 
+    @GetMapping("/metrics/httpPool")
+    public ObjectNode httpPoolMetrics() {
+        return HttpClientPoolHelper.fetchPoolMetrics();
+    }
+
+    @GetMapping("/metrics/serviceGuard")
+    public ObjectNode serviceGuardMetrics() {
+        return ServiceGuardHelper.fetchGuardMetrics();
+    }
+
+    @GetMapping("/metrics/dbPool")
+    public ObjectNode dbPoolMetrics() {
+        return DBCPDataSourceFactory.fetchPoolMetrics();
+    }
+
+    @GetMapping("/metrics/endpointLatency")
+    public ObjectNode endpointLatencyMetrics() {
+        return EndpointLatencyHelper.fetchLatencyMetrics();
+    }
+
+    @GetMapping("/metrics/variableCache")
+    public ObjectNode variableCacheMetrics() {
+        return VariableCacheHelper.fetchCacheMetrics();
+    }
+
+    @PostMapping("/cache/variables/invalidate")
+    public ObjectNode invalidateVariableCache() {
+        return VariableCacheHelper.invalidate();
+    }
+
     private boolean isNullOrBlank(String str) {
         return str == null || str.trim().isEmpty();
     }
@@ -7,7 +7,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import citi.equities.lifecycleqa.common.entities.AutoCaseAudit;
 import citi.equities.lifecycleqa.common.entities.AutomationStepBasicInfo;
 import citi.equities.lifecycleqa.common.enums.AutoStepRunStatus;
+import citi.equities.lifecycleqa.common.helpers.ResponseCaptureHelper;
 import citi.equities.lifecycleqa.common.helpers.StepHelper;
+import citi.equities.lifecycleqa.common.helpers.TestDataContextHelper;
 import citi.equities.lifecycleqa.common.listeners.BaseTestClass;
 import citi.equities.lifecycleqa.common.utils.DataTypeUtil;
 import org.slf4j.Logger;
@@ -49,31 +51,46 @@ public class APITestClass extends BaseTestClass implements ITest {
             scriptMap.put(1, objectMapper.createObjectNode());
         }
 
-        for (Map.Entry<Integer, JsonNode> entry : scriptMap.entrySet()) {
-            int stepId = entry.getKey();
-            JsonNode stepNode = entry.getValue();
+        TestDataContextHelper.startCase(autoCaseAudit.getRunId(), Integer.parseInt(autoCaseAudit.getCaseId()),
+                autoCaseAudit.getTestDataString() != null ? autoCaseAudit.getTestDataString() : objectMapper.createObjectNode());
 
-            if (!stepNode.isObject()) {
-                continue;
-            }
+        try {
+            ObjectNode caseResponses = objectMapper.createObjectNode();
+            for (Map.Entry<Integer, JsonNode> entry : scriptMap.entrySet()) {
+                int stepId = entry.getKey();
+                JsonNode stepNode = entry.getValue();
+
+                if (!stepNode.isObject()) {
+                    continue;
+                }
 
-            ObjectNode stepObject = (ObjectNode) stepNode;
-            AutomationStepBasicInfo automationBasicInfo = createAutomationStepBasicInfo(stepId, stepObject, autoCaseAudit);
-            Map.Entry<AutoStepRunStatus, ArrayNode> result = StepHelper.doActionForAPITestStep(automationBasicInfo, stepObject);
+                ObjectNode stepObject = (ObjectNode) stepNode;
+                AutomationStepBasicInfo automationBasicInfo = createAutomationStepBasicInfo(stepId, stepObject, autoCaseAudit);
+                automationBasicInfo.setResponses(caseResponses);
+                Map.Entry<AutoStepRunStatus, ArrayNode> result = StepHelper.doActionForAPITestStep(automationBasicInfo, stepObject);
 
-            AutoStepRunStatus status = result.getKey();
-            ArrayNode stepResults = result.getValue();
+                AutoStepRunStatus status = result.getKey();
+                ArrayNode stepResults = result.getValue();
 
-            for (JsonNode stepResult : stepResults) {
-                if (stepResult.isObject()) {
-                    stepList.add(stepResult);
+                for (JsonNode stepResult : stepResults) {
+                    if (stepResult.isObject()) {
+                        stepList.add(stepResult);
+                    }
                 }
-            }
 
-            if (status != AutoStepRunStatus.Passed) {
-                stepStatus = "failed";
-                break;
+                if (status != AutoStepRunStatus.Passed) {
+                    stepStatus = "failed";
+                    break;
+                }
+            }
+        } finally {
+            // the context is dropped even when a step throws, otherwise it stays in memory for the instance lifetime
+            StringBuilder errorMessage = new StringBuilder();
+            TestDataContextHelper.endCase(autoCaseAudit.getRunId(), Integer.parseInt(autoCaseAudit.getCaseId()), errorMessage);
+            if (errorMessage.length() > 0) {
+                log.error("Failed to flush testData for caseId={} with error {}", autoCaseAudit.getCaseId(), errorMessage);
             }
+            ResponseCaptureHelper.deleteSpillFiles(autoCaseAudit.getRunId(), Integer.parseInt(autoCaseAudit.getCaseId()));
         }
 
         updateRunStatusAndElement(index, autoCaseAudit, startRuntime, stepStatus, stepList);
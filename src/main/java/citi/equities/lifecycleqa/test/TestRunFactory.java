@@ -7,10 +7,12 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import citi.equities.lifecycleqa.common.entities.AutoCaseAudit;
 import citi.equities.lifecycleqa.common.enums.AutomationRunMode;
 import citi.equities.lifecycleqa.common.enums.AutomationRunStatus;
+import citi.equities.lifecycleqa.common.helpers.SuiteGeneratePreparationHelper;
 import citi.equities.lifecycleqa.common.utils.DataTypeUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.Factory;
+import org.testng.annotations.Optional;
 import org.testng.annotations.Parameters;
 
 import java.util.ArrayList;
@@ -23,10 +25,13 @@ public class TestRunFactory {
 
     @Factory
     @Parameters({"runId", "scenario", "audits"})
-    public Object[] createInstances(String runId, String scenario, String audits) {
+    public Object[] createInstances(String runId, String scenario, @Optional("[]") String audits) {
         log.info("Start Run runId={}, Scenario={}", runId, scenario);
 
-        JsonNode auditsJson = DataTypeUtil.convertToJsonNode(audits);
+        // suites built by CommonAlterListener pass the audits in memory, the parameter is for hand written testng.xml
+        ObjectNode preparedScenarios = SuiteGeneratePreparationHelper.fetchPreparedScenarios(runId);
+        JsonNode auditsJson = preparedScenarios != null && preparedScenarios.has(scenario)
+                ? preparedScenarios.get(scenario) : DataTypeUtil.convertToJsonNode(audits);
         ArrayNode auditArray = auditsJson.isArray() ? (ArrayNode) auditsJson : objectMapper.createArrayNode();
 
         List<AutoCaseAudit> auditList = buildBasicAutoCaseAudit(auditArray);
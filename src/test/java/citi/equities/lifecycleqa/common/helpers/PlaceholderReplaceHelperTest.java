@@ -0,0 +1,130 @@
+package citi.equities.lifecycleqa.common.helpers;
+
+import citi.equities.lifecycleqa.common.entities.ParameterizedSql;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class PlaceholderReplaceHelperTest {
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{\\{([^\\{\\}]*?)\\}\\}");
+
+    private static final Map<String, JsonNode> VALUES = new HashMap<>();
+
+    static {
+        VALUES.put("id", new IntNode(42));
+        VALUES.put("flag", BooleanNode.TRUE);
+        VALUES.put("name", new TextNode("O'Brien"));
+        VALUES.put("table", new TextNode("auto_case_audit"));
+        VALUES.put("day", new TextNode("2024-01-31"));
+        VALUES.put("days", new TextNode("3"));
+        VALUES.put("column", new IntNode(2));
+        VALUES.put("limit", new IntNode(10));
+    }
+
+    private static ParameterizedSql compile(String sqlTemplate) {
+        return PlaceholderReplaceHelper.compileSql(sqlTemplate,
+                key -> VALUES.getOrDefault(key, NullNode.getInstance()),
+                PlaceholderReplaceHelperTest::resolveText);
+    }
+
+    private static String resolveText(String content) {
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(content);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            JsonNode value = VALUES.getOrDefault(matcher.group(1), NullNode.getInstance());
+            matcher.appendReplacement(result, Matcher.quoteReplacement(value.isTextual() ? value.asText() : value.toString()));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    @Test
+    public void testQuotedLiteralAndNumbersAreBound() {
+        ParameterizedSql compiled = compile("select * from {{table}} where name like '%{{name}}%' and id = {{id}} and active = {{flag}}");
+
+        Assert.assertEquals(compiled.getSql(), "select * from auto_case_audit where name like ? and id = ? and active = ?");
+        Assert.assertEquals(compiled.getMapperSql(),
+                "select * from auto_case_audit where name like #{params[0]} and id = #{params[1]} and active = #{params[2]}");
+        Assert.assertEquals(compiled.getParams(), Arrays.asList("%O'Brien%", 42, true));
+    }
+
+    @Test
+    public void testTypedLiteralsAreSpliced() {
+        ParameterizedSql compiled = compile("select * from t where d = DATE '{{day}}' and ts > timestamp with time zone '{{day}}'"
+                + " and d > now() - interval '{{days}} day' and n = '{{name}}'");
+
+        Assert.assertEquals(compiled.getSql(), "select * from t where d = DATE '2024-01-31' and ts > timestamp with time zone '2024-01-31'"
+                + " and d > now() - interval '3 day' and n = ?");
+        Assert.assertEquals(compiled.getParams(), Collections.singletonList("O'Brien"));
+    }
+
+    @Test
+    public void testTypedLiteralEscapesQuotes() {
+        ParameterizedSql compiled = compile("select date '{{name}}'");
+
+        Assert.assertEquals(compiled.getSql(), "select date 'O''Brien'");
+        Assert.assertTrue(compiled.getParams().isEmpty());
+    }
+
+    @Test
+    public void testOrderByAndGroupByNumbersAreSpliced() {
+        ParameterizedSql compiled = compile("select a, count(*) from t where id = {{id}} group by {{column}}"
+                + " order by {{column}} desc limit {{limit}}");
+
+        Assert.assertEquals(compiled.getSql(), "select a, count(*) from t where id = ? group by 2 order by 2 desc limit 10");
+        Assert.assertEquals(compiled.getParams(), Collections.singletonList(42));
+    }
+
+    @Test
+    public void testCommentsAreKeptAsIs() {
+        ParameterizedSql compiled = compile("select 1 -- it's {{id}}\nfrom t /* '{{name}}' */ where id = {{id}}");
+
+        Assert.assertEquals(compiled.getSql(), "select 1 -- it's {{id}}\nfrom t /* '{{name}}' */ where id = ?");
+        Assert.assertEquals(compiled.getParams(), Collections.singletonList(42));
+    }
+
+    @Test
+    public void testDollarQuotedBodyIsSpliced() {
+        ParameterizedSql compiled = compile("do $body$ begin update t set n = '{{name}}' where id = {{id}}; end $body$; select $$a'{{id}}$$");
+
+        Assert.assertEquals(compiled.getSql(), "do $body$ begin update t set n = 'O''Brien' where id = 42; end $body$; select $$a'42$$");
+        Assert.assertTrue(compiled.getParams().isEmpty());
+    }
+
+    @Test
+    public void testLimitAndOffsetNumbersAreSpliced() {
+        ParameterizedSql compiled = compile("select * from t where id = {{id}} limit {{limit}} offset {{column}}");
+
+        Assert.assertEquals(compiled.getSql(), "select * from t where id = ? limit 10 offset 2");
+        Assert.assertEquals(compiled.getParams(), Collections.singletonList(42));
+    }
+
+    @Test
+    public void testTopAndFetchNumbersAreSpliced() {
+        ParameterizedSql compiled = compile("select top {{limit}} a from t where id = {{id}}"
+                + " union select top ({{column}}) a from t order by 1 fetch first {{limit}} rows only");
+
+        Assert.assertEquals(compiled.getSql(), "select top 10 a from t where id = ?"
+                + " union select top (2) a from t order by 1 fetch first 10 rows only");
+        Assert.assertEquals(compiled.getParams(), Collections.singletonList(42));
+    }
+
+    @Test
+    public void testQuotedIdentifierIsSpliced() {
+        ParameterizedSql compiled = compile("select \"{{id}}\" from t where id = {{id}}");
+
+        Assert.assertEquals(compiled.getSql(), "select \"42\" from t where id = ?");
+        Assert.assertEquals(compiled.getParams(), Collections.singletonList(42));
+    }
+}